@@ -4,9 +4,13 @@ import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import javax.persistence.EntityManager;
 
+@EnableAsync(proxyTargetClass = true) //InitMember 백그라운드 적재
+@EnableScheduling //커넥션 누수 검사, 풀 크기 조정
 @SpringBootApplication
 public class QuerydslApplication {
 
@@ -3,12 +3,24 @@ package study.querydsl.controller;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.repository.MemberJpaRepository;
 import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.ResultSizeGuard;
+import study.querydsl.web.MemberSearchStreamer;
+import study.querydsl.web.RequestDeadlines;
+import study.querydsl.web.SearchETags;
 
 import java.util.List;
 
@@ -18,14 +30,52 @@ public class HelloController {
 
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final SearchETags searchETags;
+    private final ResultSizeGuard resultSizeGuard;
+    private final MemberSearchStreamer memberSearchStreamer;
+    private final RequestDeadlines requestDeadlines;
 
     @GetMapping("/hello")
     public String hello() {
         return "hello";
     }
 
-    @GetMapping("/test") //http://localhost:8081/test?page=2&size=10
-    public Page<MemberTeamDto> searchMember(MemberSearchCondition condition, Pageable pageable) {
-        return memberRepository.searchPageComplex(condition, pageable);
+    @GetMapping("/test") //http://localhost:8081/test?page=2&size=10 (응답 형식은 MemberTeamPageHttpMessageConverter)
+    public WebAsyncTask<Page<MemberTeamDto>> searchMember(MemberSearchCondition condition, Pageable pageable, WebRequest request) {
+        if (searchETags.checkNotModified(request, condition, pageable)) {
+            return null; //304, member/team 테이블이 바뀌지 않았으면 조회하지 않는다
+        }
+        //마감(request-deadline.timeout-ms)이 지나거나 클라이언트가 끊으면 쿼리 취소
+        return requestDeadlines.withDeadline(request, () -> memberRepository.searchPageComplex(condition, pageable));
+    }
+
+    @GetMapping("/test/slice") //http://localhost:8081/test/slice?page=2&size=10 (count 쿼리 없이 다음 페이지 여부만)
+    public WebAsyncTask<Slice<MemberTeamDto>> searchMemberSlice(MemberSearchCondition condition, Pageable pageable, WebRequest request) {
+        if (searchETags.checkNotModified(request, condition, pageable)) {
+            return null; //304, /test 와 같은 기준
+        }
+        return requestDeadlines.withDeadline(request, () -> memberRepository.searchSlice(condition, pageable));
+    }
+
+    //탭마다 /test/all 을 따로 호출하지 않고 조건 목록을 한번에, 결과는 조건 순서대로 (쿼리 한번)
+    @PostMapping("/test/batch") //[{"teamName":"teamA"},{"teamName":"teamB"}]
+    public WebAsyncTask<List<List<MemberTeamDto>>> searchBatch(@RequestBody List<MemberSearchCondition> conditions, WebRequest request) {
+        return requestDeadlines.withDeadline(request, () -> memberRepository.searchBatch(conditions));
+    }
+
+    @GetMapping("/test/all") //http://localhost:8081/test/all?teamName=teamA (페이징 없이 전체)
+    public ResponseEntity<StreamingResponseBody> searchAll(MemberSearchCondition condition) {
+        StreamingResponseBody body;
+        if (resultSizeGuard.isStreamOnExceeded() && memberSearchStreamer.canStream()) {
+            //query.guard.max-rows 를 넘으면 리스트로 모으지 않고 커서로 스트리밍
+            body = resultSizeGuard.fetchOrFallback(() -> memberRepository.search(condition))
+                    .map(memberSearchStreamer::write)
+                    .orElseGet(() -> memberSearchStreamer.stream(condition));
+        } else {
+            body = memberSearchStreamer.write(memberRepository.search(condition)); //넘으면 422 (ResultSizeGuardAdvice)
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 }
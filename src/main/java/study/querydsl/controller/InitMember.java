@@ -1,28 +1,89 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.context.annotation.ComponentScan;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
 
-import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
+/**
+ * 로컬 샘플 데이터 적재
+ * 기동(@PostConstruct)을 막지 않도록 ApplicationReadyEvent 이후 백그라운드에서 batch 단위 트랜잭션으로 넣는다.
+ * init-member.gate-readiness=true 이면 적재가 끝날 때까지 readiness 를 OUT_OF_SERVICE 로 둔다.
+ * 적재가 실패하면 예외를 남겨 health 로 알린다. (gate-readiness=true 이면 DOWN, 아니면 UP + failed 상세)
+ */
+@Slf4j
 @Profile("local")
 @Component
 @RequiredArgsConstructor
-public class InitMember {
+public class InitMember implements HealthIndicator {
 
     private final InitMemberService initMemberService;
 
-    @PostConstruct
+    @Value("${init-member.size:100}")
+    private int size;
+
+    @Value("${init-member.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${init-member.gate-readiness:false}")
+    private boolean gateReadiness;
+
+    private volatile int seeded;
+    private volatile boolean completed;
+    private volatile RuntimeException failure; //적재 실패, @Async 라 호출한 쪽으로 전달되지 않는다
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
     public void initPost() {
+        long start = System.currentTimeMillis();
+        completed = false;
+        failure = null;
+
+        try {
+            Team[] teams = initMemberService.initTeams();
+            for (int from = 0; from < size; from += batchSize) {
+                int to = Math.min(from + batchSize, size);
+                initMemberService.init(teams, from, to);
+                seeded = to;
+                log.info("init member progress: {}/{}", seeded, size);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            log.error("init member failed after {}/{} members", seeded, size, e);
+            return;
+        }
 
-        initMemberService.init();
+        completed = true;
+        log.info("init member finished: {} members in {} ms", size, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public Health health() {
+        RuntimeException failed = failure;
+        if (failed != null) {
+            Health.Builder builder = gateReadiness ? Health.down(failed) : Health.up().withDetail("failed", failed.toString());
+            return builder
+                    .withDetail("seeded", seeded)
+                    .withDetail("size", size)
+                    .build();
+        }
+        Health.Builder builder = !gateReadiness || completed ? Health.up() : Health.outOfService();
+        return builder
+                .withDetail("seeded", seeded)
+                .withDetail("size", size)
+                .build();
     }
 
     @Component
@@ -31,11 +92,21 @@ public class InitMember {
         private EntityManager em;
 
         @Transactional
-        public void init() {
+        public Team[] initTeams() {
             Team teamA = new Team("teamA");
             Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            return new Team[]{teamA, teamB};
+        }
+
+        //batch 하나가 트랜잭션 하나, 끝나면 영속성 컨텍스트도 같이 비워진다
+        @Transactional
+        public void init(Team[] teams, int from, int to) {
+            Team teamA = em.getReference(Team.class, teams[0].getId());
+            Team teamB = em.getReference(Team.class, teams[1].getId());
 
-            for (int i = 0; i < 100; i++) {
+            for (int i = from; i < to; i++) {
                 Team selectTeam = i % 2 == 0 ? teamA : teamB;
                 em.persist(new Member("member"+i, i, selectTeam));
             }
@@ -0,0 +1,28 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.PurgeJobDto;
+import study.querydsl.service.MemberPurgeService;
+
+@RestController
+@RequiredArgsConstructor
+public class MemberPurgeController {
+
+    private final MemberPurgeService memberPurgeService;
+
+    @PostMapping("/members/purge") //http://localhost:8081/members/purge?ageGt=18
+    public PurgeJobDto purge(@RequestParam int ageGt) {
+        return new PurgeJobDto(memberPurgeService.purgeOlderThan(ageGt));
+    }
+
+    @GetMapping("/members/purge/{jobId}")
+    public ResponseEntity<PurgeJobDto> purgeStatus(@PathVariable Long jobId) {
+        return ResponseEntity.of(memberPurgeService.findJob(jobId).map(PurgeJobDto::new));
+    }
+}
@@ -1,13 +1,20 @@
 package study.querydsl.dto;
 
 import lombok.Data;
+import org.springframework.util.StringUtils;
 
 @Data
 public class MemberSearchCondition {
     //회원명, 팀명, 나이(ageGoe, ageLoe)
 
     private String username;
+    private String usernameEqIgnoreCase; //대소문자 구분 없이 일치 (member.usernameLower 로 검색)
     private String teamName;
     private Integer ageGoe; //그거나 같거나
     private Integer ageLoe; //작거나 같거나
+
+    //나이 범위만으로는 대부분의 회원이 걸릴 수 있어 선택도 높은 조건으로 보지 않는다 (ResultSizeGuard)
+    public boolean hasSelectiveCondition() {
+        return StringUtils.hasText(username) || StringUtils.hasText(usernameEqIgnoreCase) || StringUtils.hasText(teamName);
+    }
 }
@@ -0,0 +1,35 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+import study.querydsl.entity.PurgeJob;
+
+import java.time.LocalDateTime;
+
+/**
+ * 회원 대량 삭제 작업 진행 상태 응답 (엔티티를 그대로 내보내지 않는다)
+ */
+@Data
+public class PurgeJobDto {
+
+    private Long jobId;
+    private int ageGt;
+    private PurgeJob.Status status;
+    private long lastId;
+    private long maxId;
+    private long deleted;
+    private double deletedPerSecond;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+
+    public PurgeJobDto(PurgeJob job) {
+        this.jobId = job.getId();
+        this.ageGt = job.getAgeGt();
+        this.status = job.getStatus();
+        this.lastId = job.getLastId();
+        this.maxId = job.getMaxId();
+        this.deleted = job.getDeleted();
+        this.deletedPerSecond = job.getDeletedPerSecond();
+        this.startedAt = job.getStartedAt();
+        this.updatedAt = job.getUpdatedAt();
+    }
+}
@@ -3,8 +3,14 @@ package study.querydsl.entity;
 import lombok.*;
 
 import javax.persistence.*;
+import java.util.Locale;
 
 @Entity
+@EntityListeners(MemberEntityListener.class) //저장/수정/삭제 시 MemberChangedEvent 발행
+@Table(indexes = {
+        @Index(name = "idx_member_username_lower", columnList = "username_lower"),
+        @Index(name = "idx_member_age", columnList = "age") //max(age), age = ? (MemberAgeAggregateCache, findOldest)
+})
 @Getter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)  //기본생성자를 protected로 생성
 @ToString(of = {"id", "username", "age"})   //toString을 생성해줌, team의 경우 무한루프에 빠질 수 있어 제외
@@ -17,8 +23,18 @@ public class Member {
 
     private String username;
 
+    //대소문자 구분 없는 검색용 (where lower(username) = ? 는 인덱스를 못 탐), 저장/수정 시 username 에 맞춰 갱신
+    //벌크 update 로 username 을 바꿀 때는 같이 set 해줘야 한다
+    @Column(name = "username_lower")
+    private String usernameLower;
+
     private int age;
 
+    //마지막으로 DB 에서 읽거나 DB 에 쓴 나이, MemberChangedEvent 의 이전 나이 (엔티티 리스너가 먼저 불린 뒤 갱신된다)
+    @Transient
+    @Getter(AccessLevel.PACKAGE)
+    private Integer storedAge;
+
     @ManyToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL)
     @JoinColumn(name = "team_id")
     private Team team;
@@ -39,6 +55,27 @@ public class Member {
         this(username, age, null);
     }
 
+    @PrePersist
+    @PreUpdate
+    private void syncUsernameLower() {
+        this.usernameLower = lower(username);
+    }
+
+    @PostLoad
+    @PostPersist
+    @PostUpdate
+    private void syncStoredAge() {
+        this.storedAge = age;
+    }
+
+    public static String lower(String username) {
+        return username != null ? username.toLowerCase(Locale.ROOT) : null;
+    }
+
+    public void changeUsername(String username) {
+        this.username = username;
+    }
+
     //양방향 연관관계 매핑
     private void changeTeam(Team team) {
         this.team = team;
@@ -0,0 +1,24 @@
+package study.querydsl.entity;
+
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * MemberAgeDeltaBuffer 가 모아둔 나이 증감분을 기본 DB 에 반영할 때 그 트랜잭션 안에서 발행하는 이벤트
+ * 회원별 증감분과 반영 후 나이를 같이 넘긴다. (shard 에 반영할 때는 발행하지 않는다)
+ *
+ * 받는 쪽은 @TransactionalEventListener 로 커밋 후에 반영한다. 버퍼는 커밋 후 리스너가 끝난 다음에 증감분을 inFlight 에서 뺀다.
+ * 반영 후 나이는 같은 트랜잭션에서 다시 읽은 값이라 여러 번 반영해도 결과가 같다.
+ */
+@Getter
+public class MemberAgeDeltaFlushedEvent {
+
+    private final Map<Long, Integer> deltas; //회원 id -> 반영한 증감분 (update 건수가 0 인 회원은 빠진다)
+    private final Map<Long, Integer> ages; //회원 id -> 반영 후 나이
+
+    public MemberAgeDeltaFlushedEvent(Map<Long, Integer> deltas, Map<Long, Integer> ages) {
+        this.deltas = deltas;
+        this.ages = ages;
+    }
+}
@@ -0,0 +1,19 @@
+package study.querydsl.entity;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 벌크 연산(대량 삭제 등)으로 member 테이블이 바뀐 뒤 발행하는 이벤트 (나이 증감 flush 는 MemberAgeDeltaFlushedEvent)
+ * 어떤 회원이 바뀌었는지는 알려주지 않으므로 받는 쪽은 캐시를 무효화하거나 다시 적재한다.
+ */
+@Getter
+@ToString
+public class MemberBulkChangedEvent {
+
+    private final String source; //발행한 작업 (purge ...)
+
+    public MemberBulkChangedEvent(String source) {
+        this.source = source;
+    }
+}
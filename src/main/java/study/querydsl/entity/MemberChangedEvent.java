@@ -0,0 +1,33 @@
+package study.querydsl.entity;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Member 가 저장/수정/삭제될 때 MemberEntityListener 가 발행하는 이벤트
+ * 벌크 연산(update, delete .execute())은 엔티티 콜백을 거치지 않으므로 발행되지 않는다.
+ */
+@Getter
+@ToString
+public class MemberChangedEvent {
+
+    public enum Type {
+        PERSIST, UPDATE, REMOVE
+    }
+
+    private final Type type;
+    private final Long memberId;
+    private final String username;
+    private final int age;
+    private final Integer previousAge; //DB 에 있던 나이, PERSIST 이거나 알 수 없으면 null
+    private final Long teamId;
+
+    public MemberChangedEvent(Type type, Member member) {
+        this.type = type;
+        this.memberId = member.getId();
+        this.username = member.getUsername();
+        this.age = member.getAge();
+        this.previousAge = type != Type.PERSIST ? member.getStoredAge() : null;
+        this.teamId = member.getTeam() != null ? member.getTeam().getId() : null;
+    }
+}
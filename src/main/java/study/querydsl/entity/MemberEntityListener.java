@@ -0,0 +1,35 @@
+package study.querydsl.entity;
+
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Member 엔티티 콜백을 MemberChangedEvent 로 발행한다.
+ * Spring Boot 가 Hibernate 에 SpringBeanContainer 를 등록해주기 때문에 생성자 주입을 받을 수 있다.
+ */
+public class MemberEntityListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public MemberEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostPersist
+    public void postPersist(Member member) {
+        eventPublisher.publishEvent(new MemberChangedEvent(MemberChangedEvent.Type.PERSIST, member));
+    }
+
+    @PostUpdate
+    public void postUpdate(Member member) {
+        eventPublisher.publishEvent(new MemberChangedEvent(MemberChangedEvent.Type.UPDATE, member));
+    }
+
+    @PostRemove
+    public void postRemove(Member member) {
+        eventPublisher.publishEvent(new MemberChangedEvent(MemberChangedEvent.Type.REMOVE, member));
+    }
+}
@@ -0,0 +1,78 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * 회원 대량 삭제 작업의 진행 상태
+ * 처리한 id 구간의 끝(lastId)을 chunk 마다 커밋하기 때문에 재기동 후 이어서 삭제할 수 있다.
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+public class PurgeJob {
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    @Id
+    @GeneratedValue
+    @Column(name = "purge_job_id")
+    private Long id;
+
+    private int ageGt; //삭제 조건 : age > ageGt
+
+    private long lastId; //여기까지(포함) 처리 완료
+
+    private long maxId; //시작 시점의 대상 최대 id, 이후에 들어온 회원은 건드리지 않는다
+
+    private long deleted;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime updatedAt;
+
+    public PurgeJob(int ageGt, long minId, long maxId) {
+        this.ageGt = ageGt;
+        this.lastId = minId - 1;
+        this.maxId = maxId;
+        this.status = minId > maxId ? Status.COMPLETED : Status.RUNNING;
+        this.startedAt = LocalDateTime.now();
+        this.updatedAt = startedAt;
+    }
+
+    public void progress(long lastId, long deleted) {
+        this.lastId = lastId;
+        this.deleted += deleted;
+        this.updatedAt = LocalDateTime.now();
+        if (lastId >= maxId) {
+            this.status = Status.COMPLETED;
+        }
+    }
+
+    public void fail() {
+        this.status = Status.FAILED;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public boolean isRunning() {
+        return status == Status.RUNNING;
+    }
+
+    //초당 삭제 건수 (재시작한 경우 중단되어 있던 시간도 포함)
+    public double getDeletedPerSecond() {
+        long millis = Duration.between(startedAt, updatedAt).toMillis();
+        return millis > 0 ? deleted * 1000.0 / millis : 0;
+    }
+}
@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@EntityListeners(TeamEntityListener.class) //수정/삭제 시 TeamChangedEvent 발행
 @Getter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "name"})
@@ -25,5 +26,8 @@ public class Team {
         this.name = name;
     }
 
+    public void changeName(String name) {
+        this.name = name;
+    }
 
 }
@@ -0,0 +1,27 @@
+package study.querydsl.entity;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Team 이 수정/삭제될 때 TeamEntityListener 가 발행하는 이벤트
+ * 팀 이름을 들고 있는 회원 검색 스냅샷처럼 팀 이름을 복사해 둔 쪽이 받는다.
+ */
+@Getter
+@ToString
+public class TeamChangedEvent {
+
+    public enum Type {
+        UPDATE, REMOVE
+    }
+
+    private final Type type;
+    private final Long teamId;
+    private final String name;
+
+    public TeamChangedEvent(Type type, Team team) {
+        this.type = type;
+        this.teamId = team.getId();
+        this.name = team.getName();
+    }
+}
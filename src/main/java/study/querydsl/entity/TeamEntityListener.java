@@ -0,0 +1,29 @@
+package study.querydsl.entity;
+
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Team 엔티티 콜백을 TeamChangedEvent 로 발행한다. (MemberEntityListener 참고)
+ * 새 팀은 아직 회원이 없으므로 저장은 발행하지 않는다.
+ */
+public class TeamEntityListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public TeamEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostUpdate
+    public void postUpdate(Team team) {
+        eventPublisher.publishEvent(new TeamChangedEvent(TeamChangedEvent.Type.UPDATE, team));
+    }
+
+    @PostRemove
+    public void postRemove(Team team) {
+        eventPublisher.publishEvent(new TeamChangedEvent(TeamChangedEvent.Type.REMOVE, team));
+    }
+}
@@ -0,0 +1,99 @@
+package study.querydsl.monitoring;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceUnwrapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 관측된 커넥션 대기 시간과 처리량을 보고 Hikari 풀 크기를 min~max 범위 안에서 조정한다.
+ * 구간 평균 대기가 목표보다 길고 대기 쓰레드가 있으면 늘리고, 대기가 거의 없고 idle 이 많으면 하나씩 줄인다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "monitoring.connection.adaptive.enabled", havingValue = "true")
+public class AdaptivePoolSizer {
+
+    private final HikariDataSource hikari;
+    private final ConnectionPoolMonitor monitor;
+    private final int minSize;
+    private final int maxSize;
+    private final long targetWaitNanos;
+    private final int configuredMinIdle; //줄일 때 같이 낮춘 minimumIdle 을 늘릴 때 설정값까지 되돌린다
+
+    private long lastCount;
+    private double lastTotalNanos;
+    private long lastAdjustedAt = System.nanoTime();
+
+    @Getter
+    private volatile double meanWaitMillis;
+    @Getter
+    private volatile double acquiresPerSecond;
+
+    public AdaptivePoolSizer(DataSource dataSource, ConnectionPoolMonitor monitor,
+                             @Value("${monitoring.connection.adaptive.min-size:5}") int minSize,
+                             @Value("${monitoring.connection.adaptive.max-size:30}") int maxSize,
+                             @Value("${monitoring.connection.adaptive.target-wait-ms:5}") long targetWaitMillis) {
+        this.hikari = DataSourceUnwrapper.unwrap(dataSource, HikariConfigMXBean.class, HikariDataSource.class);
+        this.monitor = monitor;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(targetWaitMillis);
+        this.configuredMinIdle = hikari != null ? hikari.getMinimumIdle() : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${monitoring.connection.adaptive.interval-ms:10000}")
+    public void adjust() {
+        HikariPoolMXBean pool = hikari != null ? hikari.getHikariPoolMXBean() : null;
+        if (pool == null) {
+            return; //풀이 아직 시작되지 않음
+        }
+
+        Timer acquire = monitor.getAcquireTimer();
+        long count = acquire.count();
+        double totalNanos = acquire.totalTime(TimeUnit.NANOSECONDS);
+        long now = System.nanoTime();
+
+        long windowCount = count - lastCount;
+        double windowMeanNanos = windowCount > 0 ? (totalNanos - lastTotalNanos) / windowCount : 0;
+        acquiresPerSecond = windowCount / ((now - lastAdjustedAt) / 1_000_000_000.0);
+        meanWaitMillis = windowMeanNanos / 1_000_000.0;
+        lastCount = count;
+        lastTotalNanos = totalNanos;
+        lastAdjustedAt = now;
+
+        HikariConfigMXBean config = hikari.getHikariConfigMXBean();
+        int current = config.getMaximumPoolSize();
+        int next = current;
+        if (windowMeanNanos > targetWaitNanos && pool.getThreadsAwaitingConnection() > 0) {
+            next = Math.min(maxSize, current + Math.max(1, current / 4));
+        } else if (windowMeanNanos < targetWaitNanos / 4 && pool.getIdleConnections() > current / 2) {
+            next = Math.max(minSize, current - 1);
+        }
+
+        if (next != current) {
+            config.setMaximumPoolSize(next);
+            config.setMinimumIdle(Math.min(configuredMinIdle, next));
+            log.info("connection pool resized {} -> {} (mean wait {} ms, {} acquires/s)",
+                    current, next, String.format("%.2f", meanWaitMillis), String.format("%.1f", acquiresPerSecond));
+        }
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
@@ -0,0 +1,100 @@
+package study.querydsl.monitoring;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.jdbc.DataSourceUnwrapper;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /actuator/connectionpool
+ * 풀 상태, 커넥션 획득 대기 분포, 리포지토리 메서드별 점유 시간, 누수 의심 커넥션, 자동 크기 조정 상태
+ */
+@Component
+@Endpoint(id = "connectionpool")
+public class ConnectionPoolEndpoint {
+
+    private final ConnectionPoolMonitor monitor;
+    private final ObjectProvider<AdaptivePoolSizer> adaptivePoolSizer;
+    private final HikariDataSource hikari;
+
+    public ConnectionPoolEndpoint(ConnectionPoolMonitor monitor, ObjectProvider<AdaptivePoolSizer> adaptivePoolSizer,
+                                  DataSource dataSource) {
+        this.monitor = monitor;
+        this.adaptivePoolSizer = adaptivePoolSizer;
+        this.hikari = DataSourceUnwrapper.unwrap(dataSource, HikariConfigMXBean.class, HikariDataSource.class);
+    }
+
+    @ReadOperation
+    public Map<String, Object> connectionPool() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pool", pool());
+        result.put("acquire", summary(monitor.getAcquireTimer()));
+
+        Map<String, Object> hold = new LinkedHashMap<>();
+        for (Timer timer : monitor.getHoldTimers()) {
+            hold.put(timer.getId().getTag("method"), summary(timer));
+        }
+        result.put("holdByMethod", hold);
+
+        List<Map<String, Object>> leaks = new ArrayList<>();
+        for (ConnectionPoolMonitor.Lease lease : monitor.getSuspectedLeaks()) {
+            Map<String, Object> leak = new LinkedHashMap<>();
+            leak.put("method", lease.getMethod());
+            leak.put("thread", lease.getThread());
+            leak.put("heldMillis", TimeUnit.NANOSECONDS.toMillis(lease.heldNanos()));
+            leaks.add(leak);
+        }
+        result.put("suspectedLeaks", leaks);
+
+        AdaptivePoolSizer sizer = adaptivePoolSizer.getIfAvailable();
+        if (sizer != null) {
+            Map<String, Object> adaptive = new LinkedHashMap<>();
+            adaptive.put("minSize", sizer.getMinSize());
+            adaptive.put("maxSize", sizer.getMaxSize());
+            adaptive.put("meanWaitMillis", sizer.getMeanWaitMillis());
+            adaptive.put("acquiresPerSecond", sizer.getAcquiresPerSecond());
+            result.put("adaptive", adaptive);
+        }
+        return result;
+    }
+
+    private Map<String, Object> pool() {
+        Map<String, Object> pool = new LinkedHashMap<>();
+        HikariPoolMXBean mxBean = hikari != null ? hikari.getHikariPoolMXBean() : null;
+        if (mxBean == null) {
+            return pool;
+        }
+        pool.put("maximumPoolSize", hikari.getHikariConfigMXBean().getMaximumPoolSize());
+        pool.put("total", mxBean.getTotalConnections());
+        pool.put("active", mxBean.getActiveConnections());
+        pool.put("idle", mxBean.getIdleConnections());
+        pool.put("awaiting", mxBean.getThreadsAwaitingConnection());
+        return pool;
+    }
+
+    private Map<String, Object> summary(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", snapshot.count());
+        summary.put("meanMillis", snapshot.mean(TimeUnit.MILLISECONDS));
+        summary.put("maxMillis", snapshot.max(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            summary.put("p" + Math.round(percentile.percentile() * 100) + "Millis", percentile.value(TimeUnit.MILLISECONDS));
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,121 @@
+package study.querydsl.monitoring;
+
+import com.p6spy.engine.common.ConnectionInformation;
+import com.p6spy.engine.event.JdbcEventListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * p6spy 이벤트로 커넥션 획득 대기 시간(acquire)과 점유 시간(hold)을 측정한다.
+ * 점유 시간은 커넥션을 획득한 리포지토리 메서드별로 집계하고,
+ * 임계값 이상 반납되지 않은 커넥션은 획득한 메서드/쓰레드와 함께 누수 의심으로 기록한다.
+ */
+@Slf4j
+@Component
+public class ConnectionPoolMonitor extends JdbcEventListener {
+
+    private final MeterRegistry meterRegistry;
+    private final long leakThresholdNanos;
+
+    @Getter
+    private final Timer acquireTimer;
+    private final Counter leakCounter;
+
+    private final Map<ConnectionInformation, Lease> leases = new ConcurrentHashMap<>();
+    private final Map<String, Timer> holdTimers = new ConcurrentHashMap<>();
+
+    public ConnectionPoolMonitor(MeterRegistry meterRegistry,
+                                 @Value("${monitoring.connection.leak-threshold-ms:10000}") long leakThresholdMillis) {
+        this.meterRegistry = meterRegistry;
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis);
+        this.acquireTimer = Timer.builder("db.connection.acquire")
+                .description("time spent waiting for a pooled connection")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.leakCounter = Counter.builder("db.connection.leak.suspected")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onAfterGetConnection(ConnectionInformation connectionInformation, SQLException e) {
+        if (e != null) {
+            return;
+        }
+        acquireTimer.record(connectionInformation.getTimeToGetConnectionNs(), TimeUnit.NANOSECONDS);
+        leases.put(connectionInformation, new Lease(RepositoryCallContext.current(), Thread.currentThread().getName()));
+    }
+
+    @Override
+    public void onAfterConnectionClose(ConnectionInformation connectionInformation, SQLException e) {
+        Lease lease = leases.remove(connectionInformation);
+        if (lease != null) {
+            holdTimer(lease.getMethod()).record(lease.heldNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${monitoring.connection.leak-check-interval-ms:5000}")
+    public void detectLeaks() {
+        for (Lease lease : leases.values()) {
+            if (!lease.isReported() && lease.heldNanos() > leakThresholdNanos) {
+                lease.reported = true;
+                leakCounter.increment();
+                log.warn("connection held for {} ms without being returned, acquired by {} on thread {}",
+                        TimeUnit.NANOSECONDS.toMillis(lease.heldNanos()), lease.getMethod(), lease.getThread());
+            }
+        }
+    }
+
+    public Collection<Timer> getHoldTimers() {
+        return holdTimers.values();
+    }
+
+    public List<Lease> getSuspectedLeaks() {
+        List<Lease> result = new ArrayList<>();
+        for (Lease lease : leases.values()) {
+            if (lease.heldNanos() > leakThresholdNanos) {
+                result.add(lease);
+            }
+        }
+        return result;
+    }
+
+    private Timer holdTimer(String method) {
+        return holdTimers.computeIfAbsent(method, m -> Timer.builder("db.connection.hold")
+                .description("time a connection is held, by the repository method that acquired it")
+                .tag("method", m)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry));
+    }
+
+    @Getter
+    public static class Lease {
+        private final String method;
+        private final String thread;
+        private final long acquiredAt = System.nanoTime();
+        private volatile boolean reported;
+
+        Lease(String method, String thread) {
+            this.method = method;
+            this.thread = thread;
+        }
+
+        public long heldNanos() {
+            return System.nanoTime() - acquiredAt;
+        }
+    }
+}
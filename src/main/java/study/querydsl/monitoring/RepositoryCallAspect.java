@@ -0,0 +1,69 @@
+package study.querydsl.monitoring;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLTimeoutException;
+
+/**
+ * 리포지토리(MemberRepository, MemberJpaRepository) 메서드 호출을 RepositoryCallContext 에 기록한다.
+ * 같은 패키지의 내부 컴포넌트(MemberAgeDeltaBuffer, MemberSearchSnapshot, MemberAgeAggregateCache, MemberBatchReader 등)는 제외한다.
+ * 트랜잭션 시작(커넥션 획득)보다 먼저 기록되어야 하므로 가장 높은 우선순위로 둔다.
+ *
+ * 쿼리 타임아웃/취소(QueryDeadline, RequestDeadlines)로 실패한 호출은 repository.query.timeout{method} 로 센다.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RepositoryCallAspect {
+
+    private final MeterRegistry meterRegistry;
+
+    public RepositoryCallAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* study.querydsl.repository.MemberRepository+.*(..))"
+            + " || execution(* study.querydsl.repository.MemberJpaRepository.*(..))")
+    public Object trace(ProceedingJoinPoint joinPoint) throws Throwable {
+        String method = joinPoint.getSignature().getDeclaringType().getSimpleName()
+                + "." + joinPoint.getSignature().getName();
+
+        boolean outermost = RepositoryCallContext.enter(method);
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            if (outermost && isTimeout(e)) {
+                Counter.builder("repository.query.timeout")
+                        .description("repository calls failed by query timeout or cancellation")
+                        .tag("method", method)
+                        .register(meterRegistry)
+                        .increment();
+            }
+            throw e;
+        } finally {
+            if (outermost) {
+                RepositoryCallContext.exit();
+            }
+        }
+    }
+
+    //예외 변환 단계(JDBC -> Hibernate -> JPA -> Spring)마다 타입이 달라서 cause 를 따라가며 확인
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTimeoutException
+                    || cause instanceof javax.persistence.QueryTimeoutException
+                    || cause instanceof org.hibernate.QueryTimeoutException
+                    || cause instanceof org.springframework.dao.QueryTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
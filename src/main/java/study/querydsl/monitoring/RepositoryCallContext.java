@@ -0,0 +1,32 @@
+package study.querydsl.monitoring;
+
+/**
+ * 현재 쓰레드에서 실행 중인 (가장 바깥쪽) 리포지토리 메서드 이름
+ * 커넥션 점유 시간, 타임아웃 등을 어떤 리포지토리 메서드가 일으켰는지 연결하는데 사용한다.
+ */
+public final class RepositoryCallContext {
+
+    public static final String UNKNOWN = "unknown";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private RepositoryCallContext() {
+    }
+
+    public static String current() {
+        String method = CURRENT.get();
+        return method != null ? method : UNKNOWN;
+    }
+
+    static boolean enter(String method) {
+        if (CURRENT.get() != null) {
+            return false; //중첩 호출은 바깥쪽 메서드로 집계
+        }
+        CURRENT.set(method);
+        return true;
+    }
+
+    static void exit() {
+        CURRENT.remove();
+    }
+}
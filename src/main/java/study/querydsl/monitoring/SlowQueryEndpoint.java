@@ -0,0 +1,49 @@
+package study.querydsl.monitoring;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * /actuator/slowqueries?order=total&limit=20
+ * SQL fingerprint 별 집계 상위 N 개 (order : total, count, p95, max), DELETE 로 초기화
+ */
+@Component
+@Endpoint(id = "slowqueries")
+public class SlowQueryEndpoint {
+
+    private final SlowQueryLog slowQueryLog;
+
+    public SlowQueryEndpoint(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> slowQueries(@Nullable String order, @Nullable Integer limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (SlowQueryLog.Stats stats : slowQueryLog.top(order, limit != null ? limit : 20)) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("fingerprint", stats.getFingerprint());
+            entry.put("jpql", stats.getJpql());
+            entry.put("count", stats.getCount());
+            entry.put("totalMillis", stats.getTotalMillis());
+            entry.put("p95Millis", stats.getP95Millis());
+            entry.put("maxMillis", stats.getMaxMillis());
+            entry.put("samples", stats.getSamples());
+            result.add(entry);
+        }
+        return result;
+    }
+
+    @DeleteOperation
+    public void reset() {
+        slowQueryLog.reset();
+    }
+}
@@ -0,0 +1,289 @@
+package study.querydsl.monitoring;
+
+import com.p6spy.engine.common.PreparedStatementInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.JdbcEventListener;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * p6spy 로 실행되는 모든 SQL 을 fingerprint(SqlFingerprint) 별로 집계한다. (건수, 합계, p95, 최대)
+ * threshold 이상 걸린 실행은 경고 로그를 남기고, 바인딩된 파라미터와 리포지토리 메서드를 샘플로 보관한다.
+ * 결과는 /actuator/slowqueries (SlowQueryEndpoint)
+ *
+ * 실행마다 호출되므로 lock 을 쓰지 않는다.
+ * - 건수/합계는 LongAdder, 최대는 LongAccumulator
+ * - p95 는 고정된 로그 스케일 구간(약 20% 간격)의 AtomicLongArray 히스토그램에서 구한다 (구간 상한값으로 근사)
+ * - 샘플은 fingerprint 마다 sample-size 개의 링 버퍼
+ * fingerprint 는 max-fingerprints 개까지만 따로 집계하고 나머지는 OTHER 로 합친다.
+ */
+@Slf4j
+@Component
+public class SlowQueryLog extends JdbcEventListener {
+
+    public static final String OTHER = "(other)";
+
+    //10us ~ 약 100s, 구간 상한 (micro seconds)
+    private static final long[] BUCKET_BOUNDS;
+
+    static {
+        List<Long> bounds = new ArrayList<>();
+        for (double bound = 10; bound < 100_000_000; bound *= 1.2) {
+            bounds.add((long) bound);
+        }
+        bounds.add(Long.MAX_VALUE);
+        BUCKET_BOUNDS = bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private final long thresholdNanos;
+    private final int sampleSize;
+    private final int maxFingerprints;
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    public SlowQueryLog(@Value("${monitoring.slow-query.threshold-ms:100}") long thresholdMillis,
+                        @Value("${monitoring.slow-query.sample-size:5}") int sampleSize,
+                        @Value("${monitoring.slow-query.max-fingerprints:1000}") int maxFingerprints) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.sampleSize = sampleSize;
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    @Override
+    public void onAfterExecuteQuery(PreparedStatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        record(statementInformation, timeElapsedNanos);
+    }
+
+    @Override
+    public void onAfterExecuteQuery(StatementInformation statementInformation, long timeElapsedNanos, String sql, SQLException e) {
+        record(statementInformation, timeElapsedNanos);
+    }
+
+    @Override
+    public void onAfterExecute(PreparedStatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        record(statementInformation, timeElapsedNanos);
+    }
+
+    @Override
+    public void onAfterExecute(StatementInformation statementInformation, long timeElapsedNanos, String sql, SQLException e) {
+        record(statementInformation, timeElapsedNanos);
+    }
+
+    @Override
+    public void onAfterExecuteUpdate(PreparedStatementInformation statementInformation, long timeElapsedNanos, int rowCount, SQLException e) {
+        record(statementInformation, timeElapsedNanos);
+    }
+
+    @Override
+    public void onAfterExecuteUpdate(StatementInformation statementInformation, long timeElapsedNanos, String sql, int rowCount, SQLException e) {
+        record(statementInformation, timeElapsedNanos);
+    }
+
+    @Override
+    public void onAfterExecuteBatch(StatementInformation statementInformation, long timeElapsedNanos, int[] updateCounts, SQLException e) {
+        record(statementInformation, timeElapsedNanos);
+    }
+
+    private void record(StatementInformation statementInformation, long elapsedNanos) {
+        String sql = statementInformation.getStatementQuery();
+        if (sql != null) {
+            record(sql, elapsedNanos, elapsedNanos >= thresholdNanos ? statementInformation.getSqlWithValues() : null);
+        }
+    }
+
+    /**
+     * sqlWithValues 는 threshold 를 넘었을 때만 넘긴다. (샘플용, 문자열 조립 비용)
+     */
+    void record(String sql, long elapsedNanos, String sqlWithValues) {
+        String fingerprint = SqlFingerprint.of(sql);
+        Stats stat = stats.get(fingerprint);
+        if (stat == null) {
+            stat = stats.size() < maxFingerprints
+                    ? stats.computeIfAbsent(fingerprint, f -> new Stats(f, SqlFingerprint.comment(sql), sampleSize))
+                    : stats.computeIfAbsent(OTHER, f -> new Stats(f, null, sampleSize));
+        }
+        stat.record(elapsedNanos);
+
+        if (sqlWithValues != null) {
+            String method = RepositoryCallContext.current();
+            stat.sample(new Sample(TimeUnit.NANOSECONDS.toMillis(elapsedNanos), method, SqlFingerprint.literals(sqlWithValues),
+                    System.currentTimeMillis()));
+            log.warn("slow query {} ms by {} : {}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos), method, fingerprint);
+        }
+    }
+
+    /**
+     * order : count, total, p95, max 중 하나 (그 값 내림차순)
+     * 정렬 중에도 값이 계속 바뀌므로 먼저 한번씩 읽어 둔 값으로 정렬한다. (비교마다 다시 읽으면 비교 결과가 어긋난다)
+     */
+    public List<Stats> top(String order, int limit) {
+        List<Ranked> ranked = new ArrayList<>(stats.size());
+        for (Stats stat : stats.values()) {
+            ranked.add(new Ranked(stat.orderValue(order), stat));
+        }
+        ranked.sort((a, b) -> Long.compare(b.value, a.value));
+
+        List<Stats> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < limit && i < ranked.size(); i++) {
+            result.add(ranked.get(i).stats);
+        }
+        return result;
+    }
+
+    public Collection<Stats> all() {
+        return stats.values();
+    }
+
+    public void reset() {
+        stats.clear();
+    }
+
+    public static class Stats {
+        @Getter
+        private final String fingerprint;
+        @Getter
+        private final String jpql; //Hibernate sql 주석, 없으면 null
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length);
+
+        private final AtomicReferenceArray<Sample> samples;
+        private final AtomicInteger sampleIndex = new AtomicInteger();
+
+        Stats(String fingerprint, String jpql, int sampleSize) {
+            this.fingerprint = fingerprint;
+            this.jpql = jpql;
+            this.samples = new AtomicReferenceArray<>(Math.max(1, sampleSize));
+        }
+
+        void record(long elapsedNanos) {
+            count.increment();
+            totalNanos.add(elapsedNanos);
+            maxNanos.accumulate(elapsedNanos);
+            buckets.incrementAndGet(bucketOf(TimeUnit.NANOSECONDS.toMicros(elapsedNanos)));
+        }
+
+        void sample(Sample sample) {
+            samples.set(Math.floorMod(sampleIndex.getAndIncrement(), samples.length()), sample);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getTotalMillis() {
+            return totalNanos.sum() / 1_000_000.0;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1_000_000.0;
+        }
+
+        /**
+         * 95% 가 속한 구간의 상한값 (최대값을 넘지 않음)
+         */
+        public double getP95Millis() {
+            long total = 0;
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * 0.95);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_BOUNDS[i] / 1000.0, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        public List<Sample> getSamples() {
+            List<Sample> result = new ArrayList<>();
+            for (int i = 0; i < samples.length(); i++) {
+                Sample sample = samples.get(i);
+                if (sample != null) {
+                    result.add(sample);
+                }
+            }
+            result.sort((a, b) -> Long.compare(b.getAt(), a.getAt()));
+            return result;
+        }
+
+        private long orderValue(String order) {
+            switch (Objects.toString(order, "total")) {
+                case "count":
+                    return getCount();
+                case "p95":
+                    return (long) (getP95Millis() * 1000);
+                case "max":
+                    return maxNanos.get();
+                default:
+                    return totalNanos.sum();
+            }
+        }
+
+        private static int bucketOf(long micros) {
+            int low = 0;
+            int high = BUCKET_BOUNDS.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (BUCKET_BOUNDS[mid] < micros) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    //top 정렬용, 정렬 기준 값을 읽어 둔 것
+    private static class Ranked {
+        private final long value;
+        private final Stats stats;
+
+        Ranked(long value, Stats stats) {
+            this.value = value;
+            this.stats = stats;
+        }
+    }
+
+    @Getter
+    public static class Sample {
+        private final long elapsedMillis;
+        private final String method; //RepositoryCallContext
+        private final List<String> parameters;
+        private final long at;
+
+        Sample(long elapsedMillis, String method, List<String> parameters, long at) {
+            this.elapsedMillis = elapsedMillis;
+            this.method = method;
+            this.parameters = parameters;
+            this.at = at;
+        }
+    }
+}
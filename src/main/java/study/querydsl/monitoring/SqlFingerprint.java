@@ -0,0 +1,56 @@
+package study.querydsl.monitoring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL 의 모양(fingerprint) : 리터럴을 ? 로 바꾸고 공백/대소문자를 정규화한다.
+ * 같은 Querydsl 쿼리가 파라미터만 바꿔 실행되면 같은 fingerprint 가 된다.
+ *
+ * - 'abc', 123, 1.5 -> ?
+ * - in (?, ?, ?) -> in (?+) : in 절 파라미터 개수가 달라도 같은 모양으로 본다
+ * - Hibernate 의 sql 주석(use_sql_comments, 실행한 JPQL)은 떼어서 따로 돌려준다
+ */
+public final class SqlFingerprint {
+
+    private static final Pattern COMMENT = Pattern.compile("/\\*(.*?)\\*/", Pattern.DOTALL);
+    private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'|(?<!\\?)\\b\\d+(?:\\.\\d+)?\\b"); //JPQL 의 ?1 은 그대로
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private SqlFingerprint() {
+    }
+
+    public static String of(String sql) {
+        String withoutComments = COMMENT.matcher(sql).replaceAll(" ");
+        String replaced = LITERAL.matcher(withoutComments).replaceAll("?");
+        replaced = IN_LIST.matcher(replaced).replaceAll("(?+)");
+        return WHITESPACE.matcher(replaced).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 맨 앞 주석의 내용(Hibernate 가 붙인 JPQL), 없으면 null
+     */
+    public static String comment(String sql) {
+        Matcher matcher = COMMENT.matcher(sql);
+        if (!matcher.find() || !sql.substring(0, matcher.start()).trim().isEmpty()) {
+            return null;
+        }
+        return of(matcher.group(1));
+    }
+
+    /**
+     * 리터럴을 나온 순서대로, p6spy 의 sqlWithValues 에서 꺼내면 바인딩된 파라미터 값이 된다.
+     */
+    public static List<String> literals(String sql) {
+        List<String> literals = new ArrayList<>();
+        Matcher matcher = LITERAL.matcher(COMMENT.matcher(sql).replaceAll(" "));
+        while (matcher.find()) {
+            literals.add(matcher.group());
+        }
+        return literals;
+    }
+}
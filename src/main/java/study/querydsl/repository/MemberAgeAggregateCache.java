@@ -0,0 +1,247 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.MemberAgeDeltaFlushedEvent;
+import study.querydsl.entity.MemberBulkChangedEvent;
+import study.querydsl.entity.MemberChangedEvent;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 회원 나이 전체 집계(count, sum, max) 캐시
+ * select ... where age = (select max(age) ...) 처럼 매 조회마다 서브쿼리로 집계하지 않고 이 값을 파라미터로 넣는다.
+ *
+ * 저장/수정/삭제(MemberChangedEvent)와 나이 증감 flush(MemberAgeDeltaFlushedEvent)는 커밋된 것만 증분 반영한다.
+ * - count, sum 은 이전 나이를 빼고 새 나이를 더한다.
+ * - max 는 더 큰 나이가 들어오면 바꾸고, 최고령 회원이 삭제되거나 나이가 줄었을 때만 select max(age) 로 다시 구한다. (idx_member_age)
+ * 벌크 연산(대량 삭제 등, MemberBulkChangedEvent)은 어떤 회원이 바뀌었는지 모르므로 무효화하고 다음 조회 때 전체를 다시 집계한다.
+ *
+ * 다시 집계할 때 변경이 두 번 반영되지 않도록 버전을 쓴다.
+ * - 트랜잭션 안에서 이벤트를 받으면(커밋 전) 버전을 올리고 진행 중으로 센다. 끝나면(커밋 후 반영, 롤백이면 버림) 다시 버전을 올린다.
+ * - 다시 집계는 별도 트랜잭션(REQUIRES_NEW)에서 커밋된 데이터만 읽고, 시작할 때 진행 중인 변경이 없었고 끝날 때까지 버전이 그대로일 때만 저장한다.
+ *   (진행 중인 변경은 다시 집계한 값에 들어 있을 수도 있고, 커밋 후 한번 더 더해질 수 있다)
+ * 버전, 진행 중 수, 값을 한 객체로 묶어 compareAndSet 하므로 확인과 저장 사이에 들어온 변경도 놓치지 않는다.
+ */
+@Component
+public class MemberAgeAggregateCache {
+
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+
+    private final AtomicReference<Cached> cached = new AtomicReference<>(new Cached(0, 0, null, false));
+
+    public MemberAgeAggregateCache(EntityManager em, PlatformTransactionManager transactionManager) {
+        this.queryFactory = new JPAQueryFactory(em);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    public AgeAggregate get() {
+        Cached start = cached.get();
+        if (start.aggregate != null && !start.maxStale) {
+            return start.aggregate;
+        }
+
+        AgeAggregate loaded = start.aggregate != null
+                ? start.aggregate.withMax(transactionTemplate.execute(status -> loadMax())) //count, sum 은 그대로
+                : transactionTemplate.execute(status -> load());
+        if (start.inProgress == 0) {
+            cached.compareAndSet(start, new Cached(start.version, 0, loaded, false)); //그 사이 변경이 있었으면 버린다
+        }
+        return loaded;
+    }
+
+    public void invalidate() {
+        cached.updateAndGet(current -> new Cached(current.version + 1, current.inProgress, null, false));
+    }
+
+    @EventListener
+    public void onMemberChanged(MemberChangedEvent event) {
+        if (event.getType() != MemberChangedEvent.Type.PERSIST && event.getPreviousAge() == null) {
+            invalidate(); //이전 나이를 모른다
+            return;
+        }
+        Integer previous = event.getType() != MemberChangedEvent.Type.PERSIST ? event.getPreviousAge() : null;
+        Integer current = event.getType() != MemberChangedEvent.Type.REMOVE ? event.getAge() : null;
+        if (previous != null && previous.equals(current)) {
+            return; //나이는 그대로 (이름, 팀 변경)
+        }
+        record(new AgeChange(previous, current));
+    }
+
+    @EventListener
+    public void onAgeDeltaFlushed(MemberAgeDeltaFlushedEvent event) {
+        for (Map.Entry<Long, Integer> entry : event.getAges().entrySet()) {
+            Integer delta = event.getDeltas().get(entry.getKey());
+            if (delta != null) {
+                record(new AgeChange(entry.getValue() - delta, entry.getValue()));
+            }
+        }
+    }
+
+    @EventListener
+    public void onMemberBulkChanged(MemberBulkChangedEvent event) {
+        invalidate();
+    }
+
+    /**
+     * 트랜잭션별로 변경을 모아 커밋되면 한번에 반영한다. 트랜잭션 밖이면 이미 반영된 변경이라 무효화
+     */
+    private void record(AgeChange change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate();
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<AgeChange> changes = (List<AgeChange>) TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            List<AgeChange> bound = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, bound);
+            cached.updateAndGet(current -> new Cached(current.version + 1, current.inProgress + 1, current.aggregate, current.maxStale));
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                //REQUIRES_NEW 로 끼어든 트랜잭션의 변경이 섞이지 않게
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResource(MemberAgeAggregateCache.this);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(MemberAgeAggregateCache.this, bound);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MemberAgeAggregateCache.this);
+                    boolean committed = status == STATUS_COMMITTED;
+                    cached.updateAndGet(current -> (committed ? current.apply(bound) : current).completed());
+                }
+            });
+            changes = bound;
+        }
+        changes.add(change);
+    }
+
+    private AgeAggregate load() {
+        Tuple tuple = queryFactory
+                .select(member.count(), member.age.sum(), member.age.max())
+                .from(member)
+                .fetchOne();
+
+        //sum(int) 은 Hibernate 가 Long 으로 돌려주므로 Number 로 받는다
+        Number count = tuple.get(0, Number.class);
+        Number sum = tuple.get(1, Number.class);
+        Number max = tuple.get(2, Number.class);
+        return new AgeAggregate(
+                count != null ? count.longValue() : 0,
+                sum != null ? sum.longValue() : 0,
+                max != null ? max.intValue() : null);
+    }
+
+    private Integer loadMax() {
+        return queryFactory
+                .select(member.age.max())
+                .from(member)
+                .fetchOne();
+    }
+
+    @Getter
+    @ToString
+    public static class AgeAggregate {
+        private final long count;
+        private final long sum;
+        private final Integer max; //회원이 없으면 null
+
+        public AgeAggregate(long count, long sum, Integer max) {
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public Double getAvg() {
+            return count > 0 ? (double) sum / count : null;
+        }
+
+        AgeAggregate withMax(Integer max) {
+            return new AgeAggregate(count, sum, max);
+        }
+    }
+
+    //한 회원의 나이 변경, previous 가 null 이면 저장, current 가 null 이면 삭제
+    private static class AgeChange {
+        private final Integer previous;
+        private final Integer current;
+
+        AgeChange(Integer previous, Integer current) {
+            this.previous = previous;
+            this.current = current;
+        }
+    }
+
+    private static class Cached {
+        private final long version;
+        private final int inProgress; //이벤트를 받았지만 아직 끝나지 않은 트랜잭션 수
+        private final AgeAggregate aggregate; //null 이면 다음 조회 때 전체를 다시 집계
+        private final boolean maxStale; //true 이면 aggregate.max 는 실제 max 이상인 값, 다음 조회 때 max 만 다시 구한다
+
+        Cached(long version, int inProgress, AgeAggregate aggregate, boolean maxStale) {
+            this.version = version;
+            this.inProgress = inProgress;
+            this.aggregate = aggregate;
+            this.maxStale = maxStale;
+        }
+
+        Cached apply(List<AgeChange> changes) {
+            if (aggregate == null) {
+                return this;
+            }
+            long count = aggregate.count;
+            long sum = aggregate.sum;
+            Integer max = aggregate.max;
+            boolean stale = maxStale;
+            for (AgeChange change : changes) {
+                if (change.previous != null) {
+                    count--;
+                    sum -= change.previous;
+                    if (max != null && change.previous.equals(max)) {
+                        stale = true; //같은 나이의 다른 회원이 있을 수 있다
+                    }
+                }
+                if (change.current != null) {
+                    count++;
+                    sum += change.current;
+                    if (max == null || change.current >= max) {
+                        max = change.current; //실제 max 이상이던 값보다 크거나 같으면 이 값이 max
+                        stale = false;
+                    }
+                }
+            }
+            if (count == 0) {
+                max = null;
+                stale = false;
+            }
+            return new Cached(version, inProgress, new AgeAggregate(count, sum, max), stale);
+        }
+
+        Cached completed() {
+            return new Cached(version + 1, inProgress - 1, aggregate, maxStale);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package study.querydsl.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.MemberAgeDeltaFlushedEvent;
+import study.querydsl.repository.shard.MemberShards;
+
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 회원 나이 증감(member.age.add(n))을 바로 update 하지 않고 회원별로 모아뒀다가
+ * 주기적으로(또는 쌓인 회원 수가 임계값을 넘으면) update member set age = age + ? 를 JDBC batch 로 한번에 반영한다.
+ *
+ * ConcurrentHashMap.merge/remove 가 key 단위로 원자적이라 누적과 flush 가 겹쳐도 증감분이 유실되지 않는다.
+ * flush 중인 증감분은 커밋되고 MemberAgeDeltaFlushedEvent 를 받은 쪽(스냅샷 등)이 반영할 때까지 inFlight 에 남겨 pending() 에서 계속 보이게 한다.
+ * 조회는 withPending 으로 감싸 DB(또는 스냅샷) 조회와 증감분 더하기 사이에 flush 의 커밋이 끼지 않게 한다. (StampedLock)
+ * - flush 는 deltas -> inFlight 이동과, 커밋 ~ inFlight 에서 빼기를 쓰기 락 안에서 한다.
+ * - 조회는 낙관적 읽기로 실행하고, 그 사이 쓰기 락이 걸렸으면(flush 가 커밋함) 읽기 락을 잡고 다시 조회한다.
+ *   커밋 전 값 + inFlight, 커밋 후 값 + (inFlight 없음) 둘 중 하나만 보이므로 증감분이 빠지거나 두 번 더해지지 않는다.
+ * flush 실패 시 증감분을 다시 버퍼에 합치고, 종료(@PreDestroy) 시에는 진행 중인 flush 를 기다린 뒤 남은 증감분을 반영한다.
+ * member.sharding.enabled 이면 회원 id 로 shard 를 골라 shard 별 트랜잭션으로 반영한다. (shard 하나가 실패하면 그 shard 의 증감분만 버퍼에 남는다)
+ * update 건수가 0 인 회원(그 사이 삭제됨)의 증감분은 버린다.
+ * 기본 DB 에 반영할 때는 회원별 증감분과 반영 후 나이를 MemberAgeDeltaFlushedEvent 로 발행한다. (MemberSearchSnapshot, MemberAgeAggregateCache 가 증분 반영)
+ * 비정상 종료 시에는 마지막 flush 이후의 증감분이 유실될 수 있다.
+ *
+ * 증감분은 DTO 조회(MemberRepository.search*, MemberJpaRepository.search*, /test/all 스트리밍)에만 더해진다.
+ * 스트리밍은 커서로 오래 읽으므로 withPending 을 쓰지 않고 행마다 pending() 을 더한다. (flush 와 겹친 행은 틀릴 수 있다)
+ * 엔티티 조회(findById, findAllByIds, findOldest 등)는 더하지 않는다. 관리 중인 엔티티의 age 를 바꾸면 dirty checking 으로
+ * 증감분이 한번 더 update 되기 때문이다. 벌크 update 와 마찬가지로 이미 영속성 컨텍스트에 올라온 Member 의 age 도 갱신되지 않는다.
+ */
+@Slf4j
+@Component
+public class MemberAgeDeltaBuffer {
+
+    private static final String UPDATE_SQL = "update member set age = age + ? where member_id = ?";
+    private static final String SELECT_AGE_SQL = "select member_id, age from member where member_id in (%s)";
+    private static final int SELECT_CHUNK_SIZE = 500;
+    private static final int PRIMARY = -1; //shard 를 쓰지 않을 때 기본 DataSource
+
+    private final ConcurrentHashMap<Long, Integer> deltas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Integer> inFlight = new ConcurrentHashMap<>(); //flush 중, 커밋 전
+    private final ReentrantLock flushLock = new ReentrantLock(); //flush 는 한번에 하나
+    private final AtomicBoolean scheduled = new AtomicBoolean(); //임계값 flush 를 이미 맡겼으면 true
+    private final StampedLock visibility = new StampedLock(); //flush 의 이동/커밋 (쓰기) vs 조회 + 증감분 더하기 (읽기)
+    private final AtomicLong generation = new AtomicLong(); //add 할 때마다 증가, 조회 결과가 바뀌었는지 판단용 (ETag)
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskExecutor taskExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MemberShards shards; //member.sharding.enabled=false 이면 null
+    private final int flushThreshold;
+
+    public MemberAgeDeltaBuffer(JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                @Qualifier("applicationTaskExecutor") TaskExecutor taskExecutor,
+                                ApplicationEventPublisher eventPublisher,
+                                ObjectProvider<MemberShards> shards,
+                                @Value("${member.age-delta.flush-threshold:1000}") int flushThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards.getIfAvailable();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.taskExecutor = taskExecutor;
+        this.eventPublisher = eventPublisher;
+        this.flushThreshold = flushThreshold;
+    }
+
+    public void add(Long memberId, int delta) {
+        deltas.merge(memberId, delta, Integer::sum);
+        generation.incrementAndGet();
+        if (deltas.size() >= flushThreshold && scheduled.compareAndSet(false, true)) {
+            try {
+                taskExecutor.execute(() -> {
+                    try {
+                        flush();
+                    } finally {
+                        scheduled.set(false); //flush 가 끝날 때까지는 다시 맡기지 않는다
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false); //다음 주기 flush 에 맡긴다
+            }
+        }
+    }
+
+    /**
+     * 아직 DB에 반영되지 않은 증감분
+     */
+    public int pending(Long memberId) {
+        return deltas.getOrDefault(memberId, 0) + inFlight.getOrDefault(memberId, 0);
+    }
+
+    /**
+     * 증감분이 쌓일 때마다 바뀌는 값 (flush 로 DB 에 반영될 때는 테이블 버전이 바뀐다)
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * read 결과(content 로 꺼낸 DTO)에 아직 반영되지 않은 증감분을 더해 돌려준다.
+     * read 와 증감분 읽기 사이에 flush 가 커밋했으면 read 를 한번 더 실행한다. (읽기 락을 잡고)
+     * read 안에서 다시 withPending 을 부르면 안 된다. (StampedLock 은 재진입이 안 된다)
+     */
+    public <T> T withPending(Supplier<T> read, Function<T, ? extends Collection<MemberTeamDto>> content) {
+        long stamp = visibility.tryOptimisticRead();
+        if (stamp != 0) {
+            T result = read.get();
+            Map<MemberTeamDto, Integer> pending = pendingOf(content.apply(result));
+            if (visibility.validate(stamp)) {
+                pending.forEach((dto, delta) -> dto.setAge(dto.getAge() + delta));
+                return result;
+            }
+        }
+        stamp = visibility.readLock();
+        try {
+            T result = read.get();
+            pendingOf(content.apply(result)).forEach((dto, delta) -> dto.setAge(dto.getAge() + delta));
+            return result;
+        } finally {
+            visibility.unlockRead(stamp);
+        }
+    }
+
+    private Map<MemberTeamDto, Integer> pendingOf(Collection<MemberTeamDto> members) {
+        if (deltas.isEmpty() && inFlight.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<MemberTeamDto, Integer> pending = new IdentityHashMap<>(); //DTO 는 값으로 equals
+        for (MemberTeamDto dto : members) {
+            int delta = pending(dto.getMemberId());
+            if (delta != 0) {
+                pending.put(dto, delta);
+            }
+        }
+        return pending;
+    }
+
+    @Scheduled(fixedDelayString = "${member.age-delta.flush-interval-ms:1000}")
+    public void flush() {
+        if (!flushLock.tryLock()) {
+            return; //진행 중인 flush 가 있으면 건너뛴다
+        }
+        try {
+            flushBuffered();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //진행 중인 flush 를 기다렸다가 그 사이 쌓인 증감분까지 반영
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushLock.lock();
+        try {
+            flushBuffered();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushBuffered() {
+        Map<Integer, List<Object[]>> batches = new TreeMap<>(); //shard 별 {delta, memberId}
+        long stamp = visibility.writeLock();
+        try {
+            for (Long memberId : deltas.keySet()) {
+                deltas.computeIfPresent(memberId, (id, delta) -> {
+                    if (delta != 0) {
+                        inFlight.put(id, delta);
+                        batches.computeIfAbsent(shards != null ? shards.shardOfId(id) : PRIMARY, k -> new ArrayList<>())
+                                .add(new Object[]{delta, id});
+                    }
+                    return null;
+                });
+            }
+        } finally {
+            visibility.unlockWrite(stamp);
+        }
+
+        for (Map.Entry<Integer, List<Object[]>> entry : batches.entrySet()) {
+            List<Object[]> batch = entry.getValue();
+            try {
+                int[] counts = update(entry.getKey(), batch);
+                int missing = 0;
+                for (int count : counts) {
+                    if (count == 0) {
+                        missing++;
+                    }
+                }
+                if (missing > 0) {
+                    log.warn("member age delta dropped for {} members not found (shard {})", missing, entry.getKey());
+                }
+            } catch (RuntimeException e) {
+                stamp = visibility.writeLock();
+                try {
+                    for (Object[] row : batch) {
+                        deltas.merge((Long) row[1], (Integer) row[0], Integer::sum);
+                        inFlight.remove((Long) row[1]);
+                    }
+                } finally {
+                    visibility.unlockWrite(stamp);
+                }
+                log.warn("member age delta flush failed, {} members kept in buffer (shard {})", batch.size(), entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * 건별 update 건수, 0 이면 없는 회원
+     * 커밋 직전에 쓰기 락을 잡고, 커밋(기본 DB 는 커밋 후 리스너까지) 뒤 inFlight 에서 뺀 다음 놓는다.
+     */
+    private int[] update(int shard, List<Object[]> batch) {
+        long[] stamp = new long[1];
+        try {
+            int[] counts;
+            if (shard == PRIMARY) {
+                counts = transactionTemplate.execute(status -> {
+                    int[] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+                    eventPublisher.publishEvent(flushedEvent(batch, updated));
+                    stamp[0] = visibility.writeLock();
+                    return updated;
+                });
+            } else {
+                counts = shards.inTransaction(shard, em -> {
+                    int[] updated = em.unwrap(Session.class).doReturningWork(connection -> {
+                        try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+                            for (Object[] row : batch) {
+                                statement.setInt(1, (Integer) row[0]);
+                                statement.setLong(2, (Long) row[1]);
+                                statement.addBatch();
+                            }
+                            return statement.executeBatch();
+                        }
+                    });
+                    stamp[0] = visibility.writeLock();
+                    return updated;
+                });
+            }
+            for (Object[] row : batch) {
+                inFlight.remove((Long) row[1]);
+            }
+            return counts;
+        } finally {
+            if (stamp[0] != 0) {
+                visibility.unlockWrite(stamp[0]);
+            }
+        }
+    }
+
+    private MemberAgeDeltaFlushedEvent flushedEvent(List<Object[]> batch, int[] counts) {
+        Map<Long, Integer> updated = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (counts[i] != 0) {
+                updated.put((Long) batch.get(i)[1], (Integer) batch.get(i)[0]);
+            }
+        }
+
+        Map<Long, Integer> ages = new HashMap<>();
+        List<Long> ids = new ArrayList<>(updated.keySet());
+        for (int from = 0; from < ids.size(); from += SELECT_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + SELECT_CHUNK_SIZE, ids.size()));
+            String sql = String.format(SELECT_AGE_SQL, String.join(",", Collections.nCopies(chunk.size(), "?")));
+            jdbcTemplate.query(sql, rs -> {
+                ages.put(rs.getLong(1), rs.getInt(2));
+            }, chunk.toArray());
+        }
+        return new MemberAgeDeltaFlushedEvent(updated, ages);
+    }
+}
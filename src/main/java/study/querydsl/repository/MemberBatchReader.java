@@ -0,0 +1,105 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.hibernate.HibernateQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.springframework.stereotype.Repository;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.MemberSearchPredicates.*;
+
+/**
+ * 배치 작업용 전체 조회 (MemberJpaRepository.findAll_Querydsl 대신)
+ * Hibernate StatelessSession 위에서 Querydsl 쿼리를 실행한다.
+ * - 영속성 컨텍스트(1차 캐시)가 없어 읽은 만큼 heap 에 쌓이지 않는다
+ * - 변경 감지, cascade, lazy loading 이 없다. team 은 fetch join 으로 같이 읽는다
+ * - 스프링 트랜잭션과 별개의 커넥션을 쓰므로 커밋된 데이터만 보인다
+ */
+@Repository
+public class MemberBatchReader {
+
+    private final SessionFactory sessionFactory;
+
+    public MemberBatchReader(EntityManagerFactory emf) {
+        this.sessionFactory = emf.unwrap(SessionFactory.class);
+    }
+
+    /**
+     * 커서(scroll)로 한 건씩 콜백, 처리한 건수를 돌려준다.
+     */
+    public long forEach(MemberSearchCondition condition, int fetchSize, Consumer<Member> callback) {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            ScrollableResults results = query(session, condition)
+                    .orderBy(member.id.asc())
+                    .setFetchSize(fetchSize)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+
+            long count = 0;
+            try {
+                while (results.next()) {
+                    callback.accept((Member) results.get(0));
+                    count++;
+                }
+            } finally {
+                results.close();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * id 기준 keyset 으로 chunkSize 건씩 끊어 읽어 콜백, 처리한 건수를 돌려준다.
+     * 커서를 오래 열어두지 않아서 chunk 사이에 다른 작업(쓰기 등)을 해도 된다.
+     */
+    public long forEachChunk(MemberSearchCondition condition, int chunkSize, Consumer<List<Member>> callback) {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            long count = 0;
+            Long lastId = null;
+            while (true) {
+                List<Member> chunk = query(session, condition)
+                        .where(idGt(lastId))
+                        .orderBy(member.id.asc())
+                        .limit(chunkSize)
+                        .fetch();
+
+                if (chunk.isEmpty()) {
+                    return count;
+                }
+                callback.accept(chunk);
+                count += chunk.size();
+                if (chunk.size() < chunkSize) {
+                    return count;
+                }
+                lastId = chunk.get(chunk.size() - 1).getId();
+            }
+        }
+    }
+
+    private HibernateQuery<Member> query(StatelessSession session, MemberSearchCondition condition) {
+        return new HibernateQuery<Void>(session)
+                .select(member)
+                .from(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(
+                        usernameEq(condition.getUsername()),
+                        usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                );
+    }
+
+    private BooleanExpression idGt(Long lastId) {
+        return lastId != null ? member.id.gt(lastId) : null;
+    }
+}
@@ -2,7 +2,7 @@ package study.querydsl.repository;
 
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.Predicate;
-import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.StringUtils;
@@ -12,14 +12,20 @@ import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.QTeam;
+import study.querydsl.repository.support.IdBatches;
+import study.querydsl.repository.support.ReadOnlyAwareQueryFactory;
+import study.querydsl.repository.support.ReadOnlyQueryHints;
+import study.querydsl.repository.support.ResultSizeGuard;
 
 import javax.persistence.EntityManager;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.locks.Condition;
 
 import static study.querydsl.entity.QMember.*;
 import static study.querydsl.entity.QTeam.*;
+import static study.querydsl.repository.MemberSearchPredicates.*;
 
 /**
  * 순수 JPA 리포지토리와 Querydsl
@@ -27,13 +33,19 @@ import static study.querydsl.entity.QTeam.*;
 @Repository
 public class MemberJpaRepository {
 
+    private static final int IN_BATCH_SIZE = 512; //in (...) 파라미터 수는 512 까지 (2의 거듭제곱 채우기는 in_clause_parameter_padding)
+
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final ResultSizeGuard resultSizeGuard;
+    private final MemberAgeDeltaBuffer ageDeltaBuffer;
 
     //Spring Bean등록을 해도 무방 //장점 : test Code 작성시 주입받을 필요가 없다  // 단점 : 귀찮음
-    public MemberJpaRepository(EntityManager em) {
+    public MemberJpaRepository(EntityManager em, ResultSizeGuard resultSizeGuard, MemberAgeDeltaBuffer ageDeltaBuffer) {
         this.em = em;
-        this.queryFactory = new JPAQueryFactory(em);
+        this.queryFactory = new ReadOnlyAwareQueryFactory(em, ReadOnlyQueryHints.DEFAULT); //읽기 전용 힌트, 요청 마감(QueryDeadline)
+        this.resultSizeGuard = resultSizeGuard;
+        this.ageDeltaBuffer = ageDeltaBuffer;
     }
     
 //      Srping Bean등록시 생성자 // 장점 : Lombok의 @requiredArgsConstructor 등을 사용하기 편리하다 // 단점 : Test code 작성시 @Autowired를 통해 주입받아야 한다
@@ -42,7 +54,6 @@ public class MemberJpaRepository {
 //        this.queryFactory = queryFactory;
 //    }
 
-
     //Srpig Bean 등록시(QuerydslApplication.java 참조
 
     public void save(Member member) {
@@ -54,15 +65,23 @@ public class MemberJpaRepository {
         return Optional.ofNullable(findMember);
     }
 
+    //findById 여러 건, 영속성 컨텍스트에 없는 id 만 in 쿼리로 (요청 순서대로, 없는 id 는 빠짐), MemberRepository.findAllByIds 도 이쪽으로
+    public List<Member> findAllByIds(Collection<Long> ids) {
+        resultSizeGuard.checkSize(ids.size(), "findAllByIds");
+        return IdBatches.findAll(em, Member.class, ids, IN_BATCH_SIZE,
+                batch -> queryFactory.selectFrom(member).where(member.id.in(batch)).fetch(),
+                Member::getId);
+    }
+
     public List<Member> findAll() {
         return em.createQuery("select m from Member m", Member.class)
                 .getResultList();
     }
 
+    //전체를 영속성 컨텍스트에 올린다. 배치처럼 대량으로 읽을 때는 MemberBatchReader 사용
     public List<Member> findAll_Querydsl() {
-        return queryFactory
-                .selectFrom(member)
-                .fetch();
+        return resultSizeGuard.fetch(queryFactory
+                .selectFrom(member), "findAll_Querydsl", false);
     }
 
     public List<Member> findByUsername(String username) {
@@ -72,14 +91,14 @@ public class MemberJpaRepository {
     }
 
     public List<Member> findByUsername_Querydsl(String username) {
-        return queryFactory
+        return resultSizeGuard.fetch(queryFactory
                 .selectFrom(member)
-                .where(member.username.eq(username))
-                .fetch();
+                .where(member.username.eq(username)), "findByUsername_Querydsl", true);
     }
 
     /**
      * @@중요 : 동적쿼리의 경우 조건이 없으면 모든 쿼리를 불러오기 때문에 limit등을 걸어주는 것이 좋음.
+     * -> ResultSizeGuard 로 최대 건수 제한
      */
     public List<MemberTeamDto> searchByBuilder(MemberSearchCondition condition) {
 
@@ -88,6 +107,10 @@ public class MemberJpaRepository {
             builder.and(member.username.eq(condition.getUsername()));
         }
 
+        if (StringUtils.hasText(condition.getUsernameEqIgnoreCase())) {
+            builder.and(member.usernameLower.eq(Member.lower(condition.getUsernameEqIgnoreCase())));
+        }
+
         if (StringUtils.hasText(condition.getTeamName())) {
             builder.and(team.name.eq(condition.getTeamName()));
         }
@@ -100,7 +123,7 @@ public class MemberJpaRepository {
             builder.and(member.age.goe(condition.getAgeLoe()));
         }
 
-        return queryFactory
+        JPAQuery<MemberTeamDto> query = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -109,12 +132,13 @@ public class MemberJpaRepository {
                         team.name.as("teamName")))
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(builder)
-                .fetch();
+                .where(builder);
+        //MemberRepository.search 와 같은 값이 보이도록
+        return ageDeltaBuffer.withPending(() -> resultSizeGuard.fetch(query, "searchByBuilder", condition.hasSelectiveCondition()), list -> list);
     }
 
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
+        JPAQuery<MemberTeamDto> query = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -125,28 +149,11 @@ public class MemberJpaRepository {
                 .leftJoin(member.team, team)
                 .where(
                         usernameEq(condition.getUsername()),
+                        usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
-                )
-                .fetch();
-    }
-
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
-    }
-
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null;
-    }
-
-    private BooleanExpression teamNameEq(String teamName) {
-        return StringUtils.hasText(teamName) ? team.name.eq(teamName) : null;
-
-    }
-
-    private BooleanExpression usernameEq(String username) {
-        return StringUtils.hasText(username) ? member.username.eq(username) : null;
-
+                );
+        return ageDeltaBuffer.withPending(() -> resultSizeGuard.fetch(query, "search", condition.hasSelectiveCondition()), list -> list);
     }
 }
@@ -2,16 +2,38 @@ package study.querydsl.repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface MemberRepositoryCustom {
 
     List<MemberTeamDto> search(MemberSearchCondition condition);
+    //search 여러 건을 쿼리 한번으로 (조건별 태그 컬럼으로 나눠서 conditions 순서대로), 조건 수는 query.guard.max-batch-conditions 까지
+    List<List<MemberTeamDto>> searchBatch(List<MemberSearchCondition> conditions);
     Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable);
     Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable);
+    //count 쿼리 없이 pageSize + 1 건으로 다음 페이지 여부만 (searchPageSimple/Complex 의 Slice 버전, pageable 의 sort 순, 없으면 id 순)
+    Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable);
+
+    //member.age.add(delta) 의 단건 버전, 바로 update 하지 않고 MemberAgeDeltaBuffer 에 모았다가 반영
+    //반영 전 증감분은 DTO 를 돌려주는 search* 결과에만 더해 보이고, Member 엔티티를 돌려주는 조회(findById, findAllByIds 등)에는 보이지 않는다
+    void addAge(Long memberId, int delta);
+
+    //username 부분일치/앞부분일치 (대소문자 구분 없음), MemberUsernameIndex 로 후보 id 를 찾고 IN 쿼리 한번으로 조회
+    List<Member> searchByUsernameContains(String keyword);
+    List<Member> searchByUsernamePrefix(String prefix);
+
+    //id 여러 건 조회, 영속성 컨텍스트에 없는 id 만 2의 거듭제곱 크기로 채운 in 쿼리로 (요청 순서대로, 없는 id 는 빠짐)
+    List<Member> findAllByIds(Collection<Long> ids);
+
+    //나이가 가장 많은 회원 / 평균 나이 이상인 회원, 집계값은 MemberAgeAggregateCache 에서 읽어 파라미터로 넣는다
+    List<Member> findOldest();
+    List<Member> findAgeGoeAverage();
 
 
 }
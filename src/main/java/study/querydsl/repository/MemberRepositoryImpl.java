@@ -1,37 +1,94 @@
 package study.querydsl.repository;
 
+import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.QueryResults;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.NumberExpression;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.support.PageableExecutionUtils;
-import org.springframework.util.StringUtils;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.repository.shard.ShardedMemberSearch;
+import study.querydsl.repository.support.CountQueries;
+import study.querydsl.repository.support.IdBatches;
+import study.querydsl.repository.support.ReadOnlyAwareQueryFactory;
+import study.querydsl.repository.support.ReadOnlyQueryHints;
+import study.querydsl.repository.support.ResultSizeGuard;
+import study.querydsl.repository.support.Slices;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.MemberSearchPredicates.*;
 
 public class MemberRepositoryImpl implements MemberRepositoryCustom{
 
+    private static final int IN_CHUNK_SIZE = 512; //in (...) 파라미터 수는 512 까지 (2의 거듭제곱 채우기는 in_clause_parameter_padding)
+
+    private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberJpaRepository memberJpaRepository;
+    private final MemberAgeDeltaBuffer ageDeltaBuffer;
+    private final MemberUsernameIndex usernameIndex;
+    private final MemberAgeAggregateCache ageAggregateCache;
+    private final ResultSizeGuard resultSizeGuard;
+    private final ShardedMemberSearch shardedSearch; //member.sharding.enabled=false 이면 null
+    private final MemberSearchSnapshot searchSnapshot; //member.snapshot.enabled=false 이면 null
 
-    public MemberRepositoryImpl(EntityManager em) {
-        this.queryFactory = new JPAQueryFactory(em);
+    public MemberRepositoryImpl(EntityManager em, MemberJpaRepository memberJpaRepository,
+                                MemberAgeDeltaBuffer ageDeltaBuffer, MemberUsernameIndex usernameIndex,
+                                MemberAgeAggregateCache ageAggregateCache, ResultSizeGuard resultSizeGuard,
+                                ObjectProvider<ShardedMemberSearch> shardedSearch, ObjectProvider<MemberSearchSnapshot> searchSnapshot) {
+        this.em = em;
+        this.queryFactory = new ReadOnlyAwareQueryFactory(em, ReadOnlyQueryHints.DEFAULT);
+        this.memberJpaRepository = memberJpaRepository;
+        this.ageDeltaBuffer = ageDeltaBuffer;
+        this.usernameIndex = usernameIndex;
+        this.ageAggregateCache = ageAggregateCache;
+        this.resultSizeGuard = resultSizeGuard;
+        this.shardedSearch = shardedSearch.getIfAvailable();
+        this.searchSnapshot = searchSnapshot.getIfAvailable();
     }
 
 
     @Override
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
+        resultSizeGuard.checkSelective("search", condition.hasSelectiveCondition());
+        if (shardedSearch != null) {
+            List<MemberTeamDto> merged = ageDeltaBuffer.withPending(
+                    () -> shardedSearch.search(condition, resultSizeGuard.getMaxRows() + 1L), list -> list);
+            resultSizeGuard.checkSize(merged.size(), "search");
+            return merged;
+        }
+        Optional<List<MemberTeamDto>> fromSnapshot = searchSnapshot(condition);
+        if (fromSnapshot.isPresent()) {
+            resultSizeGuard.checkSize(fromSnapshot.get().size(), "search");
+            return fromSnapshot.get();
+        }
+        JPAQuery<MemberTeamDto> query = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -42,16 +99,77 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .leftJoin(member.team, team)
                 .where(
                         usernameEq(condition.getUsername()),
+                        usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
-                .fetch();
+                .orderBy(member.id.asc()); //스냅샷, shard 와 같은 순서
+        return ageDeltaBuffer.withPending(() -> resultSizeGuard.fetch(query, "search", condition.hasSelectiveCondition()), list -> list);
+    }
+
+    @Override
+    public List<List<MemberTeamDto>> searchBatch(List<MemberSearchCondition> conditions) {
+        resultSizeGuard.checkBatchSize(conditions.size());
+        if (conditions.size() <= 1 || shardedSearch != null || searchSnapshot != null) {
+            return conditions.stream().map(this::search).collect(Collectors.toList()); //shard, 스냅샷은 조건별로
+        }
+
+        //조건별로 where 를 만들고, 조건이 있는 것만 태그 컬럼 (case when 조건 then 1 else 0 end)
+        QMemberTeamDto dto = new QMemberTeamDto(
+                member.id.as("memberId"),
+                member.username,
+                member.age,
+                team.id.as("teamId"),
+                team.name.as("teamName"));
+        List<Expression<?>> select = new ArrayList<>();
+        select.add(dto);
+        List<Predicate> wheres = new ArrayList<>();
+        NumberExpression<?>[] tags = new NumberExpression<?>[conditions.size()];
+        for (int i = 0; i < conditions.size(); i++) {
+            BooleanBuilder where = searchWhere(conditions.get(i));
+            if (where.hasValue()) {
+                tags[i] = Expressions.numberTemplate(Integer.class, "case when {0} then 1 else 0 end", where);
+                select.add(tags[i]);
+            }
+            wheres.add(where.getValue()); //조건이 없는 검색이 하나라도 있으면 전체 (anyOf 가 null)
+        }
+        boolean selective = conditions.stream().allMatch(MemberSearchCondition::hasSelectiveCondition);
+
+        JPAQuery<Tuple> query = queryFactory
+                .select(select.toArray(new Expression<?>[0]))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(wheres.contains(null) ? null : ExpressionUtils.anyOf(wheres))
+                .orderBy(member.id.asc());
+        Function<List<Tuple>, List<MemberTeamDto>> dtos = tuples -> tuples.stream().map(row -> row.get(dto)).collect(Collectors.toList());
+        List<Tuple> rows = ageDeltaBuffer.withPending(() -> resultSizeGuard.fetchBatch(query, "searchBatch", selective, conditions.size()), dtos);
+        List<MemberTeamDto> all = dtos.apply(rows); //Tuple 이 같은 DTO 를 돌려준다
+
+        List<List<MemberTeamDto>> results = new ArrayList<>();
+        for (int i = 0; i < conditions.size(); i++) {
+            List<MemberTeamDto> result = new ArrayList<>();
+            for (int row = 0; row < rows.size(); row++) {
+                if (tags[i] == null || rows.get(row).get(tags[i]).intValue() == 1) {
+                    result.add(all.get(row));
+                }
+            }
+            resultSizeGuard.checkSize(result.size(), "searchBatch"); //search 와 같이 조건마다 maxRows 까지
+            results.add(result);
+        }
+        return results;
     }
 
     @Override
     public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        QueryResults<MemberTeamDto> result = queryFactory
+        if (shardedSearch != null) {
+            return ageDeltaBuffer.withPending(() -> shardedSearch.searchPage(condition, pageable), Page::getContent);
+        }
+        Optional<Page<MemberTeamDto>> fromSnapshot = searchPageSnapshot(condition, pageable);
+        if (fromSnapshot.isPresent()) {
+            return fromSnapshot.get();
+        }
+        QueryResults<MemberTeamDto> result = ageDeltaBuffer.withPending(() -> queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -62,13 +180,15 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .leftJoin(member.team, team)
                 .where(
                         usernameEq(condition.getUsername()),
+                        usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
+                .orderBy(MemberSorts.MEMBER.orderBy(pageable.getSort())) //스냅샷, shard 와 같은 순서
                 .offset(pageable.getOffset())
                 .limit(pageable.getPageSize())
-                .fetchResults();
+                .fetchResults(), QueryResults::getResults);
 
         List<MemberTeamDto> content = result.getResults();
         long total = result.getTotal();
@@ -79,7 +199,14 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
 
     @Override
     public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
-        List<MemberTeamDto> content = queryFactory
+        if (shardedSearch != null) {
+            return ageDeltaBuffer.withPending(() -> shardedSearch.searchPage(condition, pageable), Page::getContent);
+        }
+        Optional<Page<MemberTeamDto>> fromSnapshot = searchPageSnapshot(condition, pageable);
+        if (fromSnapshot.isPresent()) {
+            return fromSnapshot.get();
+        }
+        JPAQuery<MemberTeamDto> contentQuery = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -90,43 +217,144 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .leftJoin(member.team, team)
                 .where(
                         usernameEq(condition.getUsername()),
+                        usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
-                )
+                );
+        //teamName 조건이 없으면 team join 없이 count(member.id) 만
+        JPAQuery<Long> countQuery = CountQueries.derive(queryFactory, contentQuery, member.id);
+
+        contentQuery
+                .orderBy(MemberSorts.MEMBER.orderBy(pageable.getSort()))
                 .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetch();
+                .limit(pageable.getPageSize());
+        List<MemberTeamDto> content = ageDeltaBuffer.withPending(contentQuery::fetch, list -> list);
+
+        return PageableExecutionUtils.getPage(content, pageable, countQuery::fetchOne); // CountQuery 최적화
+    }
 
-        JPAQuery<Member> total = queryFactory
-                .select(member)
+    @Override
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        if (shardedSearch != null && pageable.isUnpaged()) {
+            return Slices.of(search(condition), pageable); //shard 마다 max-rows + 1 건까지만
+        }
+        if (shardedSearch != null) {
+            return ageDeltaBuffer.withPending(() -> shardedSearch.searchSlice(condition, pageable), Slice::getContent);
+        }
+        Optional<Slice<MemberTeamDto>> fromSnapshot = searchSliceSnapshot(condition, pageable);
+        if (fromSnapshot.isPresent()) {
+            return fromSnapshot.get();
+        }
+        JPAQuery<MemberTeamDto> query = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
                 .from(member)
+                .leftJoin(member.team, team)
                 .where(
                         usernameEq(condition.getUsername()),
+                        usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
-                );
+                )
+                .orderBy(MemberSorts.MEMBER.orderBy(pageable.getSort())) //id 로 끝나서 offset 으로 넘길 때 페이지 사이 순서가 바뀌지 않는다
+                .offset(pageable.isPaged() ? pageable.getOffset() : 0)
+                .limit(Slices.limitOf(pageable));
+        List<MemberTeamDto> content = ageDeltaBuffer.withPending(query::fetch, list -> list);
+
+        return Slices.of(content, pageable);
+    }
+
+    @Override
+    public void addAge(Long memberId, int delta) {
+        ageDeltaBuffer.add(memberId, delta);
+    }
 
+    @Override
+    public List<Member> searchByUsernameContains(String keyword) {
+        BooleanExpression condition = member.username.lower().contains(keyword.toLowerCase(Locale.ROOT));
+        return usernameIndex.contains(keyword)
+                .map(ids -> findAllByIdIn(ids, condition, "searchByUsernameContains"))
+                .orElseGet(() -> resultSizeGuard.fetch(queryFactory.selectFrom(member).where(condition), "searchByUsernameContains", true)); //색인 적재 전
+    }
+
+    @Override
+    public List<Member> searchByUsernamePrefix(String prefix) {
+        BooleanExpression condition = member.username.lower().startsWith(prefix.toLowerCase(Locale.ROOT));
+        return usernameIndex.startsWith(prefix)
+                .map(ids -> findAllByIdIn(ids, condition, "searchByUsernamePrefix"))
+                .orElseGet(() -> resultSizeGuard.fetch(queryFactory.selectFrom(member).where(condition), "searchByUsernamePrefix", true));
+    }
 
-        return PageableExecutionUtils.getPage(content, pageable, () -> total.fetchCount()); // CountQuery 최적화
+    @Override
+    public List<Member> findAllByIds(Collection<Long> ids) {
+        return memberJpaRepository.findAllByIds(ids);
     }
 
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    // JPAExpressions.select(memberSub.age.max()) 서브쿼리 대신 캐시된 값을 파라미터로
+    @Override
+    public List<Member> findOldest() {
+        Integer max = ageAggregateCache.get().getMax();
+        if (max == null) {
+            return Collections.emptyList();
+        }
+        return resultSizeGuard.fetch(queryFactory
+                .selectFrom(member)
+                .where(member.age.eq(max)), "findOldest", false); //최고령이 여러 명일 수 있다
     }
 
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    @Override
+    public List<Member> findAgeGoeAverage() {
+        Double avg = ageAggregateCache.get().getAvg();
+        if (avg == null) {
+            return Collections.emptyList();
+        }
+        return resultSizeGuard.fetch(queryFactory
+                .selectFrom(member)
+                .where(member.age.goe(avg)), "findAgeGoeAverage", false); //절반 가까이 걸린다
     }
 
-    private BooleanExpression teamNameEq(String teamName) {
-        return StringUtils.hasText(teamName) ? team.name.eq(teamName) : null;
+    //스냅샷이 없거나 staleness 를 넘었으면 empty (DB 조회)
+    private Optional<List<MemberTeamDto>> searchSnapshot(MemberSearchCondition condition) {
+        if (searchSnapshot == null) {
+            return Optional.empty();
+        }
+        return ageDeltaBuffer.withPending(() -> searchSnapshot.search(condition), result -> result.orElse(Collections.emptyList()));
+    }
 
+    //스냅샷이 정렬해 자른 페이지에만 증감분을 더한다
+    private Optional<Page<MemberTeamDto>> searchPageSnapshot(MemberSearchCondition condition, Pageable pageable) {
+        if (searchSnapshot == null) {
+            return Optional.empty();
+        }
+        return ageDeltaBuffer.withPending(() -> searchSnapshot.searchPage(condition, pageable),
+                result -> result.map(Page::getContent).orElse(Collections.emptyList()));
     }
 
-    private BooleanExpression usernameEq(String username) {
-        return StringUtils.hasText(username) ? member.username.eq(username) : null;
+    private Optional<Slice<MemberTeamDto>> searchSliceSnapshot(MemberSearchCondition condition, Pageable pageable) {
+        if (searchSnapshot == null) {
+            return Optional.empty();
+        }
+        return ageDeltaBuffer.withPending(() -> searchSnapshot.searchSlice(condition, pageable),
+                result -> result.map(Slice::getContent).orElse(Collections.emptyList()));
+    }
 
+    //색인이 준 후보 id 를 PK 로 조회, 원래 조건도 같이 걸어 색인에 반영되지 않은 변경(벌크 연산 등)을 걸러낸다
+    private List<Member> findAllByIdIn(List<Long> ids, BooleanExpression condition, String method) {
+        resultSizeGuard.checkSize(ids.size(), method);
+        List<Member> result = new ArrayList<>();
+        for (List<Long> batch : IdBatches.split(ids, IN_CHUNK_SIZE)) {
+            result.addAll(queryFactory
+                    .selectFrom(member)
+                    .where(member.id.in(batch), condition)
+                    .fetch());
+        }
+        result.sort(Comparator.comparing(Member::getId));
+        return result;
     }
 }
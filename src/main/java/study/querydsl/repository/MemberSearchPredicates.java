@@ -0,0 +1,51 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * MemberSearchCondition 의 조건별 where 절, 값이 없으면 null (where 에서 무시된다)
+ * 리포지토리, shard, 스트리밍 조회가 같은 조건을 쓰도록 한 곳에 모아둔다. team 조건은 member.team 을 team 으로 join 해야 한다.
+ */
+public final class MemberSearchPredicates {
+
+    private MemberSearchPredicates() {
+    }
+
+    //조건 전체를 and 로 (조건이 하나도 없으면 hasValue() == false)
+    public static BooleanBuilder searchWhere(MemberSearchCondition condition) {
+        return new BooleanBuilder()
+                .and(usernameEq(condition.getUsername()))
+                .and(usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()))
+                .and(teamNameEq(condition.getTeamName()))
+                .and(ageGoe(condition.getAgeGoe()))
+                .and(ageLoe(condition.getAgeLoe()));
+    }
+
+    public static BooleanExpression usernameEq(String username) {
+        return StringUtils.hasText(username) ? member.username.eq(username) : null;
+    }
+
+    //lower(username) = ? 는 인덱스를 못 타므로 저장 시 채워둔 usernameLower 컬럼으로
+    public static BooleanExpression usernameEqIgnoreCase(String username) {
+        return StringUtils.hasText(username) ? member.usernameLower.eq(Member.lower(username)) : null;
+    }
+
+    public static BooleanExpression teamNameEq(String teamName) {
+        return StringUtils.hasText(teamName) ? team.name.eq(teamName) : null;
+    }
+
+    public static BooleanExpression ageGoe(Integer ageGoe) {
+        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    }
+
+    public static BooleanExpression ageLoe(Integer ageLoe) {
+        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    }
+}
@@ -0,0 +1,401 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberAgeDeltaFlushedEvent;
+import study.querydsl.entity.MemberBulkChangedEvent;
+import study.querydsl.entity.MemberChangedEvent;
+import study.querydsl.entity.TeamChangedEvent;
+import study.querydsl.repository.support.Slices;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * member left join team 결과(MemberTeamDto)를 메모리에 올려두고 MemberRepositoryImpl.search/searchPage* 에 DB 대신 응답한다.
+ * (member.snapshot.enabled=true 일 때만 등록)
+ *
+ * 스냅샷은 불변 객체이고 통째로 교체(copy-on-write)하므로 조회는 락 없이 volatile 읽기 한번이다.
+ * - 커밋된 MemberChangedEvent 는 큐에 모았다가 apply-interval-ms 마다 새 스냅샷에 반영해 교체한다.
+ * - 나이 증감 flush(MemberAgeDeltaFlushedEvent)는 커밋 직후 같은 큐에 넣고 바로 반영한다. 버퍼는 그 다음에 증감분을 inFlight 에서 빼므로
+ *   조회 결과(스냅샷 + 아직 반영되지 않은 증감분)가 뒤로 가는 구간이 없다. 반영 후 나이로 덮어쓰므로 재적재와 겹쳐도 두 번 더해지지 않는다.
+ * - MemberBulkChangedEvent(벌크 연산)나 rebuild-interval-ms 가 지나면 DB 에서 전체를 다시 적재한다.
+ *
+ * - 팀 이름을 복사해 두고 있으므로 TeamChangedEvent(팀 이름 변경, 삭제)도 전체 재적재로 반영한다.
+ *
+ * 스냅샷이 반영하지 못한 가장 오래된 변경 이후 경과 시간을 staleness 로 보고(member.snapshot.staleness),
+ * max-staleness-ms 를 넘으면 조회를 거절(Optional.empty)해 DB 로 조회하게 한다.
+ * 이벤트가 없는 변경(직접 쓴 벌크 update 등)은 rebuild-interval-ms 까지 늦게 반영될 수 있다.
+ *
+ * 결과 순서는 DB 조회와 같다. (정렬이 없으면 id 순, 있으면 MemberSorts 로)
+ * 조건에 맞는 Row 를 먼저 정렬해 자르고, 돌려줄 페이지만 MemberTeamDto 로 만든다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "member.snapshot.enabled", havingValue = "true")
+public class MemberSearchSnapshot {
+
+    private static final Comparator<Row> AGE_ID = Comparator.comparingInt((Row r) -> r.age).thenComparing(r -> r.memberId);
+    private static final Comparator<Row> ID = Comparator.comparing(r -> r.memberId);
+    private static final long NONE = Long.MAX_VALUE;
+
+    private final JPAQueryFactory queryFactory;
+    private final int loadBatchSize;
+    private final long rebuildIntervalMillis;
+    private final long maxStalenessMillis;
+
+    private volatile Snapshot snapshot; //적재 전에는 null
+
+    private final ConcurrentLinkedQueue<Change> pending = new ConcurrentLinkedQueue<>(); //커밋 순서대로
+    private final AtomicLong oldestPendingMillis = new AtomicLong(NONE); //큐에 있는 가장 오래된 변경 시각
+    private final AtomicLong dirtySinceMillis = new AtomicLong(NONE); //전체 재적재가 필요해진 시각
+
+    public MemberSearchSnapshot(EntityManager em, MeterRegistry meterRegistry,
+                                @Value("${member.snapshot.load-batch-size:10000}") int loadBatchSize,
+                                @Value("${member.snapshot.rebuild-interval-ms:60000}") long rebuildIntervalMillis,
+                                @Value("${member.snapshot.max-staleness-ms:1000}") long maxStalenessMillis) {
+        this.queryFactory = new JPAQueryFactory(em);
+        this.loadBatchSize = loadBatchSize;
+        this.rebuildIntervalMillis = rebuildIntervalMillis;
+        this.maxStalenessMillis = maxStalenessMillis;
+
+        Gauge.builder("member.snapshot.staleness", this, s -> s.getStalenessMillis() / 1000.0)
+                .description("age of the oldest change not yet reflected in the member search snapshot")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("member.snapshot.size", this, s -> s.snapshot != null ? s.snapshot.byId.size() : 0)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 스냅샷으로 답할 수 없으면(적재 전, staleness 초과) empty
+     * 결과는 id 순
+     */
+    public Optional<List<MemberTeamDto>> search(MemberSearchCondition condition) {
+        return current().map(current -> {
+            List<Row> rows = current.filter(condition);
+            rows.sort(ID);
+            return toDtos(rows);
+        });
+    }
+
+    /**
+     * pageable 의 sort 순서(MemberSorts)로 정렬해 해당 페이지만 돌려준다, total 은 조건에 맞는 전체 건수
+     */
+    public Optional<Page<MemberTeamDto>> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        return current().map(current -> {
+            List<Row> rows = current.filter(condition);
+            rows.sort(order(pageable.getSort()));
+            int from = (int) Math.min(pageable.getOffset(), rows.size());
+            int to = (int) Math.min(pageable.getOffset() + pageable.getPageSize(), rows.size());
+            return new PageImpl<>(toDtos(rows.subList(from, to)), pageable, rows.size());
+        });
+    }
+
+    /**
+     * searchPage 와 같은 순서로 offset 부터 pageSize + 1 건을 잘라 다음 페이지 여부만 (total 없이), 이번 슬라이스만 DTO 로 만든다
+     */
+    public Optional<Slice<MemberTeamDto>> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        return current().map(current -> {
+            List<Row> rows = current.filter(condition);
+            rows.sort(order(pageable.getSort()));
+            Slice<Row> slice = Slices.fromAll(rows, pageable);
+            return new SliceImpl<>(toDtos(slice.getContent()), pageable, slice.hasNext());
+        });
+    }
+
+    /**
+     * 스냅샷에 반영되지 않은 가장 오래된 변경 이후 경과 시간, 적재 전이면 Long.MAX_VALUE
+     */
+    public long getStalenessMillis() {
+        if (snapshot == null) {
+            return Long.MAX_VALUE;
+        }
+        long oldest = Math.min(oldestPendingMillis.get(), dirtySinceMillis.get());
+        return oldest == NONE ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMemberChanged(MemberChangedEvent event) {
+        long now = System.currentTimeMillis();
+        pending.add((rows, base) -> {
+            if (event.getType() == MemberChangedEvent.Type.REMOVE) {
+                rows.remove(event.getMemberId());
+            } else {
+                rows.put(event.getMemberId(), new Row(event.getMemberId(), event.getUsername(), event.getAge(),
+                        event.getTeamId(), teamName(base, event.getTeamId())));
+            }
+        });
+        oldestPendingMillis.compareAndSet(NONE, now);
+    }
+
+    //flush 한 쓰레드에서 바로 반영, 그 전에 큐에 들어온 변경도 같이 (순서 유지)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAgeDeltaFlushed(MemberAgeDeltaFlushedEvent event) {
+        long now = System.currentTimeMillis();
+        pending.add((rows, base) -> event.getAges().forEach((memberId, age) ->
+                rows.computeIfPresent(memberId, (id, row) -> row.withAge(age))));
+        oldestPendingMillis.compareAndSet(NONE, now);
+        synchronized (this) {
+            if (snapshot != null) {
+                snapshot = applyPending(snapshot);
+            }
+        }
+    }
+
+    @EventListener
+    public void onMemberBulkChanged(MemberBulkChangedEvent event) {
+        dirtySinceMillis.compareAndSet(NONE, System.currentTimeMillis());
+    }
+
+    //팀 이름은 회원 row 마다 복사되어 있어 전체를 다시 적재한다 (팀 이름 변경은 드물다)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTeamChanged(TeamChangedEvent event) {
+        dirtySinceMillis.compareAndSet(NONE, System.currentTimeMillis());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        long dirtySince = dirtySinceMillis.get();
+
+        //이미 큐에 있는 변경은 지금부터 읽을 DB 상태에 포함되어 있다
+        //(남겨두면 그 사이 벌크 삭제된 회원을 PERSIST 이벤트로 되살릴 수 있다)
+        oldestPendingMillis.set(NONE);
+        pending.clear();
+
+        Map<Long, Row> rows = new HashMap<>();
+        long lastId = 0;
+        while (true) {
+            List<MemberTeamDto> chunk = queryFactory
+                    .select(new QMemberTeamDto(
+                            member.id.as("memberId"),
+                            member.username,
+                            member.age,
+                            team.id.as("teamId"),
+                            team.name.as("teamName")))
+                    .from(member)
+                    .leftJoin(member.team, team)
+                    .where(member.id.gt(lastId))
+                    .orderBy(member.id.asc())
+                    .limit(loadBatchSize)
+                    .fetch();
+
+            for (MemberTeamDto dto : chunk) {
+                rows.put(dto.getMemberId(), new Row(dto.getMemberId(), dto.getUsername(), dto.getAge(), dto.getTeamId(), dto.getTeamName()));
+            }
+            if (chunk.size() < loadBatchSize) {
+                break;
+            }
+            lastId = chunk.get(chunk.size() - 1).getMemberId();
+        }
+
+        //적재 중 커밋된 변경은 큐에 쌓여 있으므로 이어서 반영한다 (이미 읽은 변경을 다시 반영해도 결과는 같다)
+        Snapshot rebuilt = new Snapshot(rows, start);
+        snapshot = applyPending(rebuilt);
+        dirtySinceMillis.compareAndSet(dirtySince, NONE);
+        log.info("member search snapshot loaded: {} members in {} ms", rows.size(), System.currentTimeMillis() - start);
+    }
+
+    @Scheduled(fixedDelayString = "${member.snapshot.apply-interval-ms:100}")
+    public synchronized void refresh() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        if (dirtySinceMillis.get() != NONE || System.currentTimeMillis() - current.loadedAt >= rebuildIntervalMillis) {
+            rebuild();
+        } else if (!pending.isEmpty()) {
+            snapshot = applyPending(current);
+        }
+    }
+
+    private Optional<Snapshot> current() {
+        Snapshot current = snapshot;
+        if (current == null || getStalenessMillis() > maxStalenessMillis) {
+            return Optional.empty();
+        }
+        return Optional.of(current);
+    }
+
+    private static Comparator<Row> order(Sort sort) {
+        return MemberSorts.order(sort, row -> row.memberId, row -> row.username);
+    }
+
+    private static List<MemberTeamDto> toDtos(List<Row> rows) {
+        List<MemberTeamDto> result = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            result.add(row.toDto());
+        }
+        return result;
+    }
+
+    /**
+     * 큐의 변경을 반영한 새 스냅샷, 기존 스냅샷은 그대로 둔다.
+     */
+    private Snapshot applyPending(Snapshot base) {
+        oldestPendingMillis.set(NONE);
+        List<Change> changes = new ArrayList<>();
+        for (Change change; (change = pending.poll()) != null; ) {
+            changes.add(change);
+        }
+        if (changes.isEmpty()) {
+            return base;
+        }
+
+        Map<Long, Row> rows = new HashMap<>(base.byId);
+        for (Change change : changes) {
+            change.applyTo(rows, base);
+        }
+        return new Snapshot(rows, base.loadedAt);
+    }
+
+    private String teamName(Snapshot base, Long teamId) {
+        if (teamId == null) {
+            return null;
+        }
+        String name = base.teamNames.get(teamId);
+        if (name != null) {
+            return name;
+        }
+        return queryFactory //스냅샷에 없는 새 팀
+                .select(team.name)
+                .from(team)
+                .where(team.id.eq(teamId))
+                .fetchOne();
+    }
+
+    //큐에 쌓인 변경 하나, 새 스냅샷을 만들 rows 에 반영한다
+    private interface Change {
+        void applyTo(Map<Long, Row> rows, Snapshot base);
+    }
+
+    private static class Row {
+        private final Long memberId;
+        private final String username;
+        private final String usernameLower;
+        private final int age;
+        private final Long teamId;
+        private final String teamName;
+
+        Row(Long memberId, String username, int age, Long teamId, String teamName) {
+            this.memberId = memberId;
+            this.username = username;
+            this.usernameLower = Member.lower(username);
+            this.age = age;
+            this.teamId = teamId;
+            this.teamName = teamName;
+        }
+
+        Row withAge(int age) {
+            return new Row(memberId, username, age, teamId, teamName);
+        }
+
+        MemberTeamDto toDto() {
+            return new MemberTeamDto(memberId, username, age, teamId, teamName);
+        }
+    }
+
+    /**
+     * 불변 스냅샷, 전체와 팀 이름별 목록을 (나이, id) 순으로 정렬해 둔다.
+     */
+    private static class Snapshot {
+        private final Map<Long, Row> byId;
+        private final Map<Long, String> teamNames = new HashMap<>();
+        private final List<Row> all;
+        private final Map<String, List<Row>> byTeamName = new HashMap<>();
+        private final long loadedAt; //마지막 전체 적재 시각
+
+        Snapshot(Map<Long, Row> byId, long loadedAt) {
+            this.byId = byId;
+            this.loadedAt = loadedAt;
+
+            List<Row> sorted = new ArrayList<>(byId.values());
+            sorted.sort(AGE_ID);
+            this.all = Collections.unmodifiableList(sorted);
+            for (Row row : sorted) {
+                if (row.teamId != null) {
+                    teamNames.put(row.teamId, row.teamName);
+                }
+                if (row.teamName != null) {
+                    byTeamName.computeIfAbsent(row.teamName, k -> new ArrayList<>()).add(row);
+                }
+            }
+        }
+
+        //조건에 맞는 Row (나이, id 순), 호출한 쪽에서 정렬해도 되도록 새 목록
+        List<Row> filter(MemberSearchCondition condition) {
+            List<Row> candidates = StringUtils.hasText(condition.getTeamName())
+                    ? byTeamName.getOrDefault(condition.getTeamName(), Collections.emptyList())
+                    : all;
+
+            //(나이, id) 순이므로 나이 범위는 이분 탐색으로 자른다
+            int from = condition.getAgeGoe() != null ? firstIndex(candidates, row -> row.age >= condition.getAgeGoe()) : 0;
+            int to = condition.getAgeLoe() != null ? firstIndex(candidates, row -> row.age > condition.getAgeLoe()) : candidates.size();
+
+            String username = condition.getUsername();
+            String usernameLower = StringUtils.hasText(condition.getUsernameEqIgnoreCase())
+                    ? Member.lower(condition.getUsernameEqIgnoreCase()) : null;
+
+            List<Row> result = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                Row row = candidates.get(i);
+                if (StringUtils.hasText(username) && !username.equals(row.username)) {
+                    continue;
+                }
+                if (usernameLower != null && !usernameLower.equals(row.usernameLower)) {
+                    continue;
+                }
+                result.add(row);
+            }
+            return result;
+        }
+
+        //나이 순으로 정렬된 rows 에서 조건을 처음 만족하는 위치
+        private static int firstIndex(List<Row> rows, Predicate<Row> condition) {
+            int low = 0;
+            int high = rows.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (!condition.test(rows.get(mid))) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
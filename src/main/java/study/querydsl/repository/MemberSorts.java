@@ -0,0 +1,62 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Order;
+import com.querydsl.core.types.OrderSpecifier;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.support.SortRegistry;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 회원 조회에서 허용하는 정렬
+ * - id : PK
+ * - usernameLower : idx_member_username_lower, username 정렬은 이쪽으로 바꾼다 (대소문자 구분 없는 순서가 된다)
+ * age, team.name 은 인덱스가 없어 전체 정렬(filesort)이 되므로 허용하지 않는다.
+ */
+public final class MemberSorts {
+
+    public static final SortRegistry MEMBER = SortRegistry.builder("id", member.id)
+            .sortable("usernameLower", member.usernameLower)
+            .rewrite("username", "usernameLower")
+            .build();
+
+    private MemberSorts() {
+    }
+
+    /**
+     * MEMBER.orderBy(sort) 와 같은 순서의 MemberTeamDto 비교 (shard 결과 병합, 스냅샷처럼 메모리에서 정렬할 때)
+     * null 은 H2 처럼 오름차순에서 앞, 내림차순에서 뒤
+     */
+    public static Comparator<MemberTeamDto> dtoOrder(Sort sort) {
+        return order(sort, MemberTeamDto::getMemberId, MemberTeamDto::getUsername);
+    }
+
+    //id, username 을 꺼내는 방법만 주면 MemberTeamDto 가 아닌 타입도 같은 순서로
+    public static <T> Comparator<T> order(Sort sort, Function<T, Long> id, Function<T, String> username) {
+        Comparator<T> result = null;
+        for (OrderSpecifier<?> specifier : MEMBER.orderBy(sort)) {
+            Comparator<T> next = property(specifier.getTarget(), id, username);
+            if (specifier.getOrder() == Order.DESC) {
+                next = next.reversed();
+            }
+            result = result == null ? next : result.thenComparing(next);
+        }
+        return result;
+    }
+
+    private static <T> Comparator<T> property(Expression<?> target, Function<T, Long> id, Function<T, String> username) {
+        if (target.equals(member.id)) {
+            return Comparator.comparing(id);
+        }
+        if (target.equals(member.usernameLower)) {
+            return Comparator.comparing(row -> Member.lower(username.apply(row)), Comparator.nullsFirst(Comparator.naturalOrder()));
+        }
+        throw new IllegalStateException("no in-memory property for sort " + target);
+    }
+}
@@ -1,25 +1,26 @@
 package study.querydsl.repository;
 
-import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQuery;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.support.PageableExecutionUtils;
-import org.springframework.util.StringUtils;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.QTeam;
 import study.querydsl.repository.support.Querydsl4RepositorySupport;
+import study.querydsl.repository.support.ReadOnlyQueryHints;
 
 import java.util.List;
 
 import static study.querydsl.entity.QMember.*;
 import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.MemberSearchPredicates.*;
 
 public class MemberTestRepository extends Querydsl4RepositorySupport {
     public MemberTestRepository(Class<?> domainClass) {
-        super(Member.class);
+        super(Member.class, MemberSorts.MEMBER);
     }
 
     public List<Member> basicSelect() {
@@ -28,6 +29,12 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
                 .fetch();
     }
 
+    //쓰기 트랜잭션 안에서도 읽기 전용으로 로딩 (변경 감지 대상이 아님)
+    public List<Member> basicSelectReadOnly() {
+        return selectFrom(member, ReadOnlyQueryHints.DEFAULT)
+                .fetch();
+    }
+
     public List<Member> basicSelectFrom() {
         return selectFrom(member)
                 .fetch();
@@ -39,6 +46,7 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
                 .leftJoin(member.team, team)
                 .where(
                         usernameEq(condition.getUsername()),
+                        usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -56,6 +64,7 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
                         .leftJoin(member.team, team)
                         .where(
                                 usernameEq(condition.getUsername()),
+                                usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
                                 teamNameEq(condition.getTeamName()),
                                 ageGoe(condition.getAgeGoe()),
                                 ageLoe(condition.getAgeLoe())
@@ -70,6 +79,7 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
                         .leftJoin(member.team, team)
                         .where(
                                 usernameEq(condition.getUsername()),
+                                usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
                                 teamNameEq(condition.getTeamName()),
                                 ageGoe(condition.getAgeGoe()),
                                 ageLoe(condition.getAgeLoe())
@@ -79,6 +89,7 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
                 .leftJoin(member.team, team)
                 .where(
                         usernameEq(condition.getUsername()),
+                        usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -86,23 +97,19 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
         );
     }
 
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
-    }
-
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null;
-    }
-
-    private BooleanExpression teamNameEq(String teamName) {
-        return StringUtils.hasText(teamName) ? team.name.eq(teamName) : null;
-
-    }
-
-    private BooleanExpression usernameEq(String username) {
-        return StringUtils.hasText(username) ? member.username.eq(username) : null;
+    //count 쿼리가 필요 없을 때 (다음 페이지 여부만)
+    public Slice<Member> applySlicing(MemberSearchCondition condition, Pageable pageable) {
 
+        return applySlicing(pageable, query ->
+                query.selectFrom(member)
+                        .leftJoin(member.team, team)
+                        .where(
+                                usernameEq(condition.getUsername()),
+                                usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
+                                teamNameEq(condition.getTeamName()),
+                                ageGoe(condition.getAgeGoe()),
+                                ageLoe(condition.getAgeLoe())
+                        )
+        );
     }
-
-
 }
@@ -0,0 +1,89 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import study.querydsl.entity.MemberChangedEvent;
+import study.querydsl.repository.support.NgramIndex;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Optional;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * Member.username 메모리 색인 (contains / prefix 검색용)
+ * 기동 후 id 순으로 끊어 읽어 한번에 적재하고, 이후에는 커밋된 MemberChangedEvent 로 동기화한다.
+ * 벌크 update/delete 는 이벤트가 없으므로 반영되지 않는다. 색인은 후보 id 만 주고 실제 조건은 DB 조회에서 다시 확인한다.
+ */
+@Slf4j
+@Component
+public class MemberUsernameIndex {
+
+    private final JPAQueryFactory queryFactory;
+    private final int loadBatchSize;
+    private final NgramIndex index = new NgramIndex();
+
+    private volatile boolean ready;
+
+    public MemberUsernameIndex(EntityManager em,
+                               @Value("${member.username-index.load-batch-size:10000}") int loadBatchSize) {
+        this.queryFactory = new JPAQueryFactory(em);
+        this.loadBatchSize = loadBatchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        ready = false;
+        index.clear();
+
+        long lastId = 0;
+        while (true) {
+            List<Tuple> rows = queryFactory
+                    .select(member.id, member.username)
+                    .from(member)
+                    .where(member.id.gt(lastId))
+                    .orderBy(member.id.asc())
+                    .limit(loadBatchSize)
+                    .fetch();
+
+            for (Tuple row : rows) {
+                index.put(row.get(member.id), row.get(member.username));
+            }
+            if (rows.size() < loadBatchSize) {
+                break;
+            }
+            lastId = rows.get(rows.size() - 1).get(member.id);
+        }
+
+        ready = true;
+        log.info("member username index loaded: {} members in {} ms", index.size(), System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMemberChanged(MemberChangedEvent event) {
+        if (event.getType() == MemberChangedEvent.Type.REMOVE) {
+            index.remove(event.getMemberId());
+        } else {
+            index.put(event.getMemberId(), event.getUsername());
+        }
+    }
+
+    /**
+     * 색인이 아직 적재 중이면 empty
+     */
+    public Optional<List<Long>> contains(String keyword) {
+        return ready ? Optional.of(index.contains(keyword)) : Optional.empty();
+    }
+
+    public Optional<List<Long>> startsWith(String prefix) {
+        return ready ? Optional.of(index.startsWith(prefix)) : Optional.empty();
+    }
+}
@@ -0,0 +1,179 @@
+package study.querydsl.repository.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.resource.beans.container.spi.BeanContainer;
+import org.hibernate.resource.beans.container.spi.ContainedBean;
+import org.hibernate.resource.beans.spi.BeanInstanceProducer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberEntityListener;
+import study.querydsl.entity.Team;
+import study.querydsl.entity.TeamEntityListener;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * member 테이블을 여러 DB(shard)에 나눠 저장한다. (member.sharding.enabled=true 일 때만 등록)
+ * shard 마다 DataSource + EntityManagerFactory 를 따로 만들고, 기본 DataSource 의 member 테이블은 쓰지 않는다.
+ *
+ * shard key 는 팀이다. 팀과 그 팀의 회원을 같은 shard 에 두어 member - team join, teamName 조건이 shard 안에서 끝난다.
+ * - 새 팀은 팀 이름 hash 로 shard 를 고르고, 팀이 없는 회원은 username hash 로 고른다.
+ * - id 는 shard 마다 시퀀스 시작값을 ID_RANGE 만큼 떨어뜨려 전체에서 유일하고, id 만 보고 shard 를 알 수 있다 (shardOfId).
+ *
+ * shard 쪽 Member/Team 저장/수정은 MemberChangedEvent, TeamChangedEvent 를 발행하지 않는다. (username 색인, 나이 집계 캐시는 기본 DB 기준)
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "member.sharding.enabled", havingValue = "true")
+public class MemberShards {
+
+    public static final long ID_RANGE = 1L << 40;
+
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+    private final List<EntityManagerFactory> factories = new ArrayList<>();
+
+    public MemberShards(EntityManagerFactoryBuilder builder,
+                        @Value("${member.sharding.urls}") String[] urls,
+                        @Value("${member.sharding.pool-size:5}") int poolSize,
+                        @Value("${member.sharding.ddl-auto:create}") String ddlAuto) {
+        for (int shard = 0; shard < urls.length; shard++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("member-shard-" + shard);
+            dataSource.setJdbcUrl(urls[shard]);
+            dataSource.setUsername("sa");
+            dataSource.setMaximumPoolSize(poolSize);
+            dataSources.add(dataSource);
+
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("hibernate.hbm2ddl.auto", ddlAuto);
+            properties.put("hibernate.physical_naming_strategy", "org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy");
+            properties.put("hibernate.implicit_naming_strategy", "org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy");
+            properties.put("hibernate.resource.beans.container", new ShardBeanContainer());
+
+            LocalContainerEntityManagerFactoryBean factoryBean = builder
+                    .dataSource(dataSource)
+                    .packages(Member.class)
+                    .persistenceUnit("member-shard-" + shard)
+                    .properties(properties)
+                    .build();
+            factoryBean.afterPropertiesSet();
+            factories.add(factoryBean.getObject());
+
+            if (ddlAuto.startsWith("create")) {
+                long firstId = shard * ID_RANGE + 1;
+                inTransaction(shard, em -> em.createNativeQuery("alter sequence hibernate_sequence restart with " + firstId).executeUpdate());
+            }
+            log.info("member shard {} ready: {}", shard, urls[shard]);
+        }
+    }
+
+    public int size() {
+        return factories.size();
+    }
+
+    public EntityManagerFactory get(int shard) {
+        return factories.get(shard);
+    }
+
+    public int shardOfId(Long id) {
+        return (int) (id / ID_RANGE);
+    }
+
+    public int shardOf(Team team) {
+        return team.getId() != null ? shardOfId(team.getId()) : Math.floorMod(team.getName().hashCode(), size());
+    }
+
+    public int shardOf(Member member) {
+        if (member.getId() != null) {
+            return shardOfId(member.getId());
+        }
+        return member.getTeam() != null ? shardOf(member.getTeam()) : Math.floorMod(member.getUsername().hashCode(), size());
+    }
+
+    /**
+     * 팀과 팀의 회원을 같이 저장 (Team.members cascade)
+     */
+    public void save(Team team) {
+        inTransaction(shardOf(team), em -> {
+            em.persist(team);
+            return null;
+        });
+    }
+
+    /**
+     * 팀이 없는 회원 저장, 팀이 있으면 save(Team) 으로 저장한다.
+     */
+    public void save(Member member) {
+        inTransaction(shardOf(member), em -> {
+            em.persist(member);
+            return null;
+        });
+    }
+
+    public <T> T inTransaction(int shard, Function<EntityManager, T> work) {
+        EntityManager em = factories.get(shard).createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            T result = work.apply(em);
+            tx.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        factories.forEach(EntityManagerFactory::close);
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    /**
+     * shard 에서는 MemberEntityListener, TeamEntityListener 가 이벤트를 발행하지 않도록 빈 publisher 를 넣어준다.
+     * 나머지(엔티티 콜백 등)는 Hibernate 기본 생성 방식 그대로
+     */
+    private static class ShardBeanContainer implements BeanContainer {
+
+        @Override
+        public <B> ContainedBean<B> getBean(Class<B> beanType, LifecycleOptions lifecycleOptions, BeanInstanceProducer fallbackProducer) {
+            B bean;
+            if (beanType == MemberEntityListener.class) {
+                bean = beanType.cast(new MemberEntityListener(event -> { }));
+            } else if (beanType == TeamEntityListener.class) {
+                bean = beanType.cast(new TeamEntityListener(event -> { }));
+            } else {
+                bean = fallbackProducer.produceBeanInstance(beanType);
+            }
+            return () -> bean;
+        }
+
+        @Override
+        public <B> ContainedBean<B> getBean(String name, Class<B> beanType, LifecycleOptions lifecycleOptions, BeanInstanceProducer fallbackProducer) {
+            B bean = fallbackProducer.produceBeanInstance(name, beanType);
+            return () -> bean;
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
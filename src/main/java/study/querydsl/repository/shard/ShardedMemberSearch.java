@@ -0,0 +1,233 @@
+package study.querydsl.repository.shard;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.repository.MemberSorts;
+import study.querydsl.repository.support.QueryDeadline;
+import study.querydsl.repository.support.ReadOnlyAwareQueryFactory;
+import study.querydsl.repository.support.ReadOnlyQueryHints;
+import study.querydsl.repository.support.Slices;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.QueryTimeoutException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.MemberSearchPredicates.*;
+
+/**
+ * 모든 shard 에 같은 검색 쿼리를 병렬로 보내고(scatter) 결과를 모은다(gather).
+ * 순서는 Pageable 의 sort 를 MemberSorts.MEMBER 로 바꿔 shard 쿼리에 걸고, 합칠 때도 같은 순서(MemberSorts.dtoOrder)로 정렬한다.
+ * (정렬이 없으면 id 오름차순, 허용하지 않는 정렬 키는 UnsupportedSortException)
+ *
+ * scatter 는 전용 쓰레드 풀에서 실행한다. 요청 쓰레드(web-async 풀)가 같은 풀의 shard 작업을 기다리면
+ * 요청이 몰릴 때 풀이 서로를 기다리며 멈춘다. 대기열도 제한해 넘치면 RejectedExecutionException (503)
+ *
+ * 페이징: shard 마다 앞에서부터 offset + pageSize 건을 가져와 합쳐 정렬한 뒤 offset 부터 자른다.
+ * 어느 shard 에 몇 건이 있을지 모르기 때문이라 뒤쪽 페이지일수록 shard 당 읽는 양이 늘어난다.
+ * total 은 shard 별 count 합
+ */
+@Component
+@ConditionalOnProperty(name = "member.sharding.enabled", havingValue = "true")
+public class ShardedMemberSearch {
+
+    private final MemberShards shards;
+    private final ThreadPoolExecutor scatterExecutor;
+
+    public ShardedMemberSearch(MemberShards shards,
+                               @Value("${member.sharding.scatter-threads:0}") int scatterThreads,
+                               @Value("${member.sharding.scatter-queue:100}") int scatterQueue) {
+        this.shards = shards;
+        int threads = scatterThreads > 0 ? scatterThreads : shards.size() * 2; //0 이면 shard 수 x 2
+        AtomicInteger sequence = new AtomicInteger();
+        this.scatterExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(scatterQueue),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "member-shard-scatter-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scatterExecutor.shutdownNow();
+    }
+
+    /**
+     * id 순서로 앞에서부터 limit 건까지만, shard 마다도 limit 건까지만 읽는다. (ResultSizeGuard 의 max-rows + 1)
+     */
+    public List<MemberTeamDto> search(MemberSearchCondition condition, long limit) {
+        List<MemberTeamDto> content = new ArrayList<>();
+        for (List<MemberTeamDto> partial : scatter(queryFactory -> contentQuery(queryFactory, condition, Sort.unsorted()).limit(limit).fetch())) {
+            content.addAll(partial);
+        }
+        content.sort(MemberSorts.dtoOrder(Sort.unsorted()));
+        return content.size() > limit ? new ArrayList<>(content.subList(0, (int) limit)) : content;
+    }
+
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        long window = pageable.getOffset() + pageable.getPageSize();
+        Comparator<MemberTeamDto> order = MemberSorts.dtoOrder(pageable.getSort());
+        List<ShardPage> partials = scatter(queryFactory -> new ShardPage(
+                contentQuery(queryFactory, condition, pageable.getSort()).limit(window).fetch(),
+                countQuery(queryFactory, condition).fetchOne()));
+
+        List<MemberTeamDto> merged = new ArrayList<>();
+        long total = 0;
+        for (ShardPage partial : partials) {
+            merged.addAll(partial.content);
+            total += partial.count;
+        }
+        merged.sort(order);
+
+        int from = (int) Math.min(pageable.getOffset(), merged.size());
+        int to = (int) Math.min(window, merged.size());
+        return new PageImpl<>(new ArrayList<>(merged.subList(from, to)), pageable, total);
+    }
+
+    //count 없이 shard 마다 offset + pageSize + 1 건, unpaged 는 건수 제한이 있는 search(condition, limit) 로
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            throw new IllegalArgumentException("unpaged slice 는 search(condition, limit) 로 조회해야 합니다.");
+        }
+        long window = pageable.getOffset() + Slices.limitOf(pageable);
+        Comparator<MemberTeamDto> order = MemberSorts.dtoOrder(pageable.getSort());
+        List<MemberTeamDto> merged = new ArrayList<>();
+        for (List<MemberTeamDto> partial : scatter(queryFactory -> contentQuery(queryFactory, condition, pageable.getSort()).limit(window).fetch())) {
+            merged.addAll(partial);
+        }
+        merged.sort(order);
+        return Slices.fromAll(merged, pageable);
+    }
+
+    /**
+     * shard 마다 EntityManager 를 열어 병렬 실행, 결과는 shard 순서대로
+     * 요청 마감(QueryDeadline)이 있으면 shard 쓰레드에도 걸어 쿼리 timeout 과 취소(RequestDeadlines)가 shard 쿼리까지 닿게 하고,
+     * 남은 시간까지만 기다린다. 넘으면 shard 쿼리를 취소하고 QueryTimeoutException
+     */
+    private <T> List<T> scatter(Function<JPAQueryFactory, T> query) {
+        Optional<QueryDeadline> deadline = QueryDeadline.current();
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                int target = shard;
+                futures.add(CompletableFuture.supplyAsync(() -> onShard(target, deadline, query), scatterExecutor));
+            }
+        } catch (RejectedExecutionException e) {
+            futures.forEach(future -> future.cancel(false)); //아직 시작하지 않은 shard 쿼리는 실행하지 않는다
+            throw e; //503 (ExecutorRejectedAdvice)
+        }
+
+        List<T> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(deadline.isPresent()
+                        ? future.get(Math.max(0, deadline.get().remaining(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS)
+                        : future.get());
+            }
+        } catch (TimeoutException e) {
+            futures.forEach(future -> future.cancel(false));
+            deadline.get().cancel();
+            throw new QueryTimeoutException("request deadline exceeded while waiting for shard queries");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(false));
+            throw new IllegalStateException("interrupted while waiting for shard queries", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    private <T> T onShard(int shard, Optional<QueryDeadline> deadline, Function<JPAQueryFactory, T> query) {
+        EntityManager em = shards.get(shard).createEntityManager();
+        Session session = em.unwrap(Session.class);
+        deadline.ifPresent(d -> {
+            QueryDeadline.set(d);
+            d.register(session);
+        });
+        try {
+            return query.apply(new ReadOnlyAwareQueryFactory(em, ReadOnlyQueryHints.DEFAULT)); //마감이 걸려 있으면 timeout 힌트
+        } finally {
+            deadline.ifPresent(d -> d.unregister(session));
+            QueryDeadline.clear();
+            em.close();
+        }
+    }
+
+    private JPAQuery<MemberTeamDto> contentQuery(JPAQueryFactory queryFactory, MemberSearchCondition condition, Sort sort) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(
+                        usernameEq(condition.getUsername()),
+                        usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                )
+                .orderBy(MemberSorts.MEMBER.orderBy(sort));
+    }
+
+    private JPAQuery<Long> countQuery(JPAQueryFactory queryFactory, MemberSearchCondition condition) {
+        return queryFactory
+                .select(member.count())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(
+                        usernameEq(condition.getUsername()),
+                        usernameEqIgnoreCase(condition.getUsernameEqIgnoreCase()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                );
+    }
+
+    private static class ShardPage {
+        private final List<MemberTeamDto> content;
+        private final long count;
+
+        ShardPage(List<MemberTeamDto> content, Long count) {
+            this.content = content;
+            this.count = count != null ? count : 0;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+
+/**
+ * 한 번에 묶어 검색하는 조건 수가 ResultSizeGuard 의 maxBatchConditions 를 넘음
+ */
+@Getter
+public class BatchSizeExceededException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int conditions;
+    private final int maxConditions;
+
+    public BatchSizeExceededException(int conditions, int maxConditions) {
+        super("batch of " + conditions + " conditions exceeds max " + maxConditions);
+        this.conditions = conditions;
+        this.maxConditions = maxConditions;
+    }
+}
@@ -0,0 +1,199 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.JoinFlag;
+import com.querydsl.core.JoinType;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.CollectionExpression;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.MapExpression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.core.types.TemplateExpression;
+import com.querydsl.core.types.Visitor;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.JPAQueryMixin;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 목록(content) 쿼리에서 같은 건수를 세는 가장 싼 count 쿼리를 만든다.
+ *
+ * - select 절, order by, offset/limit, fetch join 은 버리고 select count(id) 로 바꾼다.
+ * - where 절(과 남는 join 의 on/경로)에서 쓰지 않는 to-one 연관관계 left join 은 뺀다. (행 수가 변하지 않음)
+ * - inner join, 컬렉션(to-many) left join, 연관관계 없는 엔티티 join(leftJoin(team).on(...)) 은 행 수가 달라질 수 있으니 그대로 둔다.
+ * - distinct 면 count(distinct id)
+ *
+ * group by / having 이 있으면 그룹 수를 세야 해서 만들 수 없다 (isDerivable 로 먼저 확인)
+ */
+public final class CountQueries {
+
+    private static final RootCollector ROOTS = new RootCollector();
+
+    private CountQueries() {
+    }
+
+    public static boolean isDerivable(JPAQuery<?> content) {
+        QueryMetadata metadata = content.getMetadata();
+        return metadata.getGroupBy().isEmpty() && metadata.getHaving() == null;
+    }
+
+    /**
+     * @param id content 쿼리 from 엔티티의 id (member.id 등)
+     */
+    public static JPAQuery<Long> derive(JPAQueryFactory queryFactory, JPAQuery<?> content, Expression<?> id) {
+        if (!isDerivable(content)) {
+            throw new IllegalArgumentException("group by / having 이 있는 쿼리는 count 쿼리를 만들 수 없습니다.");
+        }
+        QueryMetadata source = content.getMetadata();
+        List<JoinExpression> joins = source.getJoins();
+
+        //뒤에서부터 보면 남길 join 이 참조하는 alias 까지 모두 모은 뒤에 앞쪽 join 을 판단할 수 있다
+        Set<Expression<?>> referenced = new HashSet<>();
+        collect(source.getWhere(), referenced);
+        boolean[] keep = new boolean[joins.size()];
+        for (int i = joins.size() - 1; i >= 0; i--) {
+            JoinExpression join = joins.get(i);
+            if (isRemovable(join) && !referenced.contains(aliasOf(join))) {
+                continue;
+            }
+            keep[i] = true;
+            collect(pathOf(join), referenced);
+            collect(join.getCondition(), referenced);
+        }
+
+        JPAQuery<?> count = queryFactory.query();
+        QueryMetadata target = count.getMetadata();
+        for (int i = 0; i < joins.size(); i++) {
+            if (!keep[i]) {
+                continue;
+            }
+            JoinExpression join = joins.get(i);
+            target.addJoin(join.getType(), join.getTarget());
+            if (join.getCondition() != null) {
+                target.addJoinCondition(join.getCondition());
+            }
+            for (JoinFlag flag : join.getFlags()) {
+                if (!flag.equals(JPAQueryMixin.FETCH) && !flag.equals(JPAQueryMixin.FETCH_ALL_PROPERTIES)) {
+                    target.addJoinFlag(flag);
+                }
+            }
+        }
+        if (source.getWhere() != null) {
+            target.addWhere(source.getWhere());
+        }
+        for (Map.Entry<ParamExpression<?>, Object> param : source.getParams().entrySet()) {
+            setParam(target, param.getKey(), param.getValue());
+        }
+
+        Ops.AggOps op = source.isDistinct() ? Ops.AggOps.COUNT_DISTINCT_AGG : Ops.AggOps.COUNT_AGG;
+        return count.select(Expressions.numberOperation(Long.class, op, id));
+    }
+
+    //to-one 연관관계 left join(leftJoin(member.team, team)) 만 빼도 건수가 같다
+    //leftJoin(team).on(...) 같은 theta join 은 target 이 alias 가 아닌 엔티티 경로이고, on 조건에 맞는 행이 여러 개일 수 있다
+    private static boolean isRemovable(JoinExpression join) {
+        if (join.getType() != JoinType.LEFTJOIN || !isAlias(join.getTarget())) {
+            return false;
+        }
+        Expression<?> path = pathOf(join);
+        return path instanceof Path
+                && ((Path<?>) path).getMetadata().getParent() != null //member.team 처럼 다른 alias 에서 시작하는 연관관계 경로
+                && !(path instanceof CollectionExpression) && !(path instanceof MapExpression);
+    }
+
+    private static boolean isAlias(Expression<?> target) {
+        return target instanceof Operation && ((Operation<?>) target).getOperator() == Ops.ALIAS;
+    }
+
+    //leftJoin(member.team, team) 의 target 은 alias(member.team, team)
+    private static Expression<?> aliasOf(JoinExpression join) {
+        Expression<?> target = join.getTarget();
+        return isAlias(target) ? ((Operation<?>) target).getArg(1) : target;
+    }
+
+    private static Expression<?> pathOf(JoinExpression join) {
+        Expression<?> target = join.getTarget();
+        return isAlias(target) ? ((Operation<?>) target).getArg(0) : target;
+    }
+
+    private static void collect(Expression<?> expr, Set<Expression<?>> roots) {
+        if (expr != null) {
+            expr.accept(ROOTS, roots);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void setParam(QueryMetadata metadata, ParamExpression<T> param, Object value) {
+        metadata.setParam(param, (T) value);
+    }
+
+    /**
+     * 식에서 참조하는 경로의 root (team.name -> team) 를 모은다.
+     */
+    private static class RootCollector implements Visitor<Void, Set<Expression<?>>> {
+
+        @Override
+        public Void visit(Constant<?> expr, Set<Expression<?>> roots) {
+            return null;
+        }
+
+        @Override
+        public Void visit(FactoryExpression<?> expr, Set<Expression<?>> roots) {
+            expr.getArgs().forEach(arg -> collect(arg, roots));
+            return null;
+        }
+
+        @Override
+        public Void visit(Operation<?> expr, Set<Expression<?>> roots) {
+            expr.getArgs().forEach(arg -> collect(arg, roots));
+            return null;
+        }
+
+        @Override
+        public Void visit(ParamExpression<?> expr, Set<Expression<?>> roots) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Path<?> expr, Set<Expression<?>> roots) {
+            roots.add(expr.getRoot());
+            return null;
+        }
+
+        //상관 서브쿼리가 바깥 alias 를 참조할 수 있다
+        @Override
+        public Void visit(SubQueryExpression<?> expr, Set<Expression<?>> roots) {
+            QueryMetadata metadata = expr.getMetadata();
+            for (JoinExpression join : metadata.getJoins()) {
+                collect(join.getTarget(), roots);
+                collect(join.getCondition(), roots);
+            }
+            collect(metadata.getWhere(), roots);
+            collect(metadata.getHaving(), roots);
+            collect(metadata.getProjection(), roots);
+            metadata.getGroupBy().forEach(groupBy -> collect(groupBy, roots));
+            return null;
+        }
+
+        @Override
+        public Void visit(TemplateExpression<?> expr, Set<Expression<?>> roots) {
+            for (Object arg : expr.getArgs()) {
+                if (arg instanceof Expression) {
+                    collect((Expression<?>) arg, roots);
+                }
+            }
+            return null;
+        }
+    }
+}
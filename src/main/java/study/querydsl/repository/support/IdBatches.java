@@ -0,0 +1,99 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * id 여러 건 조회 : em.find 를 id 마다 반복하지 않고 in (...) 쿼리로 묶는다.
+ *
+ * - 영속성 컨텍스트에 이미 있는 엔티티는 쿼리하지 않는다. (em.find 와 같이 삭제 예정(remove)인 엔티티는 없는 것으로)
+ *   트랜잭션 밖에서는 호출마다 새 EntityManager 라 볼 영속성 컨텍스트가 없으므로 모두 쿼리한다.
+ * - 남은 id 는 maxBatchSize 단위로 나눈다. (in (...) 파라미터 수 제한)
+ *   파라미터 수를 2의 거듭제곱으로 맞추는 것은 hibernate.query.in_clause_parameter_padding 이 한다.
+ *   SQL 문자열이 몇 가지로 고정되어 Hibernate 쿼리 plan 캐시, PreparedStatement/DB 실행계획 캐시를 다시 쓴다.
+ */
+public final class IdBatches {
+
+    private IdBatches() {
+    }
+
+    /**
+     * 요청한 id 순서대로 돌려준다. 없는 id 는 빠지고 중복 id 는 한 번만.
+     *
+     * @param query id 묶음(중복 포함 가능)으로 엔티티를 조회
+     */
+    public static <T, ID> List<T> findAll(EntityManager em, Class<T> type, Collection<ID> ids, int maxBatchSize,
+                                          Function<List<ID>, List<T>> query, Function<T, ID> idOf) {
+        List<ID> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<ID, T> found = managed(em, type, distinct);
+
+        List<ID> missing = distinct.stream()
+                .filter(id -> !found.containsKey(id))
+                .collect(Collectors.toList());
+        for (List<ID> batch : split(missing, maxBatchSize)) {
+            for (T entity : query.apply(batch)) {
+                found.putIfAbsent(idOf.apply(entity), entity);
+            }
+        }
+
+        return distinct.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * maxBatchSize 단위로 나눈다.
+     */
+    public static <ID> List<List<ID>> split(List<ID> ids, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize 는 1 이상이어야 합니다. " + maxBatchSize);
+        }
+        List<List<ID>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += maxBatchSize) {
+            batches.add(new ArrayList<>(ids.subList(from, Math.min(from + maxBatchSize, ids.size()))));
+        }
+        return batches;
+    }
+
+    //쿼리 없이 영속성 컨텍스트만 본다 (em.find 는 없으면 바로 select 하므로 쓰지 않음)
+    private static <T, ID> Map<ID, T> managed(EntityManager em, Class<T> type, List<ID> ids) {
+        Map<ID, T> managed = new LinkedHashMap<>();
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return managed;
+        }
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(type);
+        PersistenceContext persistenceContext = session.getPersistenceContextInternal();
+
+        for (ID id : ids) {
+            Object entity = persistenceContext.getEntity(session.generateEntityKey((Serializable) id, persister));
+            if (entity == null) {
+                continue;
+            }
+            EntityEntry entry = persistenceContext.getEntry(entity);
+            if (entry != null && (entry.getStatus() == Status.DELETED || entry.getStatus() == Status.GONE)) {
+                managed.put(id, null); //삭제 예정, 조회하지 않고 결과에서 뺀다
+                continue;
+            }
+            managed.put(id, type.cast(entity));
+        }
+        return managed;
+    }
+}
@@ -0,0 +1,139 @@
+package study.querydsl.repository.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 문자열 부분일치(contains) / 앞부분일치(prefix) 검색용 메모리 색인 (대소문자 구분 없음)
+ *
+ * contains : 검색어의 3-gram 중 id 집합이 가장 작은 gram 을 후보로 잡고 원문으로 한번 더 확인한다.
+ *            검색어가 3글자 미만이면 gram 을 만들 수 없으므로 전체 값을 메모리에서 확인한다.
+ * prefix   : 값 -> id 를 정렬된 map 에 두고 [prefix, prefix + Character.MAX_VALUE) 범위를 읽는다.
+ * 같은 key 에 대한 추가/삭제는 compute 로 원자적으로 처리해서 빈 집합 정리와 추가가 겹쳐도 id 가 유실되지 않는다.
+ */
+public class NgramIndex {
+
+    private static final int N = 3;
+
+    private final Map<Long, String> values = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> grams = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Set<Long>> sorted = new ConcurrentSkipListMap<>();
+
+    public void put(Long id, String value) {
+        if (value == null) {
+            remove(id);
+            return;
+        }
+        String normalized = normalize(value);
+        String previous = values.put(id, normalized);
+        if (normalized.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            unindex(id, previous);
+        }
+        for (String gram : grams(normalized)) {
+            addTo(grams, gram, id);
+        }
+        addTo(sorted, normalized, id);
+    }
+
+    public void remove(Long id) {
+        String previous = values.remove(id);
+        if (previous != null) {
+            unindex(id, previous);
+        }
+    }
+
+    public void clear() {
+        values.clear();
+        grams.clear();
+        sorted.clear();
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public List<Long> contains(String keyword) {
+        String normalized = normalize(keyword);
+        if (normalized.length() < N) {
+            List<Long> result = new ArrayList<>();
+            values.forEach((id, value) -> {
+                if (value.contains(normalized)) {
+                    result.add(id);
+                }
+            });
+            return result;
+        }
+
+        //후보는 가장 작은 gram 집합, 원문 확인을 거치므로 교집합을 구한 것과 결과가 같다
+        Set<Long> smallest = null;
+        for (String gram : grams(normalized)) {
+            Set<Long> ids = grams.getOrDefault(gram, Collections.emptySet());
+            if (smallest == null || ids.size() < smallest.size()) {
+                smallest = ids;
+            }
+        }
+
+        List<Long> result = new ArrayList<>();
+        for (Long id : smallest) {
+            String value = values.get(id);
+            if (value != null && value.contains(normalized)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    public List<Long> startsWith(String prefix) {
+        String normalized = normalize(prefix);
+        List<Long> result = new ArrayList<>();
+        for (Set<Long> ids : sorted.subMap(normalized, true, normalized + Character.MAX_VALUE, false).values()) {
+            result.addAll(ids);
+        }
+        return result;
+    }
+
+    private void unindex(Long id, String value) {
+        for (String gram : grams(value)) {
+            removeFrom(grams, gram, id);
+        }
+        removeFrom(sorted, value, id);
+    }
+
+    private static void addTo(Map<String, Set<Long>> map, String key, Long id) {
+        map.compute(key, (k, ids) -> {
+            Set<Long> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            result.add(id);
+            return result;
+        });
+    }
+
+    private static void removeFrom(Map<String, Set<Long>> map, String key, Long id) {
+        map.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static Collection<String> grams(String value) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i + N <= value.length(); i++) {
+            result.add(value.substring(i, i + N));
+        }
+        return result;
+    }
+
+    private static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
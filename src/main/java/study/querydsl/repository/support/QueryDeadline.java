@@ -0,0 +1,118 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
+
+import javax.persistence.QueryTimeoutException;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 처리 중인 요청의 마감 시각과 그 요청의 쿼리를 실행 중인 Session 들 (RequestDeadlines 가 만든다)
+ * ReadOnlyAwareQueryFactory 가 쿼리를 만들 때 현재 쓰레드에 걸린 마감의 남은 시간을 javax.persistence.query.timeout 으로 넣는다.
+ * Hibernate 는 이 값을 JDBC Statement.setQueryTimeout(초) 으로 넘기므로 DB 에서도 그 이상 실행되지 않는다.
+ *
+ * 쓰레드에 걸리므로 다른 쓰레드에서 쿼리를 실행하는 쪽(ShardedMemberSearch 등)은 current() 를 넘겨받아 set 해야 한다.
+ * cancel() 은 등록된 모든 Session 의 실행 중인 쿼리를 취소하고, 이후 이 마감으로 만드는 쿼리는 실행하지 않는다.
+ */
+public final class QueryDeadline {
+
+    private static final ThreadLocal<QueryDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos; //System.nanoTime 기준
+    private final Set<Session> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    public QueryDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static void set(long deadlineNanos) {
+        set(new QueryDeadline(deadlineNanos));
+    }
+
+    public static void set(QueryDeadline deadline) {
+        CURRENT.set(deadline);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public static Optional<QueryDeadline> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    public static OptionalLong remainingMillis() {
+        QueryDeadline deadline = CURRENT.get();
+        return deadline != null ? OptionalLong.of(deadline.remaining(TimeUnit.MILLISECONDS)) : OptionalLong.empty();
+    }
+
+    public long remaining(TimeUnit unit) {
+        return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    //쿼리를 실행할 Session 등록, 이미 취소됐으면 바로 취소
+    public void register(Session session) {
+        running.add(session);
+        if (cancelled) {
+            cancelQuietly(session);
+        }
+    }
+
+    public void unregister(Session session) {
+        running.remove(session);
+    }
+
+    /**
+     * 등록된 Session 의 실행 중인 쿼리를 취소, 취소를 보낸 Session 수
+     */
+    public int cancel() {
+        cancelled = true;
+        int cancelledSessions = 0;
+        for (Session session : running) {
+            if (cancelQuietly(session)) {
+                cancelledSessions++;
+            }
+        }
+        return cancelledSessions;
+    }
+
+    private static boolean cancelQuietly(Session session) {
+        try {
+            session.cancelQuery();
+            return true;
+        } catch (HibernateException e) {
+            return false; //실행 중인 쿼리가 없거나 이미 닫힘
+        }
+    }
+
+    /**
+     * 마감이 있으면 남은 시간을 timeout 힌트로, 이미 지났거나 취소됐으면 쿼리를 실행하지 않고 QueryTimeoutException
+     * JDBC timeout 은 초 단위라 Hibernate 가 반올림하다 0(무제한)이 되지 않도록 초 단위로 올린다.
+     */
+    static void applyTo(JPAQuery<?> query) {
+        QueryDeadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return;
+        }
+        if (deadline.cancelled) {
+            throw new QueryTimeoutException("request cancelled before query execution");
+        }
+        long remainingMillis = deadline.remaining(TimeUnit.MILLISECONDS);
+        if (remainingMillis <= 0) {
+            throw new QueryTimeoutException("request deadline exceeded before query execution");
+        }
+        long seconds = (remainingMillis + 999) / 1000;
+        query.setHint(QueryHints.TIMEOUT_JPA, (int) TimeUnit.SECONDS.toMillis(seconds));
+    }
+}
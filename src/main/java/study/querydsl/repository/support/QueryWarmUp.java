@@ -0,0 +1,120 @@
+package study.querydsl.repository.support;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 기동 시 동적 검색 쿼리 모양(shape)을 미리 한번씩 실행해 JPQL 직렬화, HQL 파싱/플랜 캐시, 클래스 로딩, JIT 워밍업을 끝내둔다.
+ * ApplicationStartedEvent 에서 동기로 실행되므로 ReadinessState.ACCEPTING_TRAFFIC(ApplicationReadyEvent) 보다 먼저 끝난다.
+ */
+@Slf4j
+@Component("queryWarmUp")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "querydsl.warm-up.enabled", havingValue = "true")
+public class QueryWarmUp implements HealthIndicator {
+
+    //조건이 걸린 경우 어떤 row와도 매칭되지 않도록 하는 값 (모양만 같으면 되기 때문)
+    private static final String NO_MATCH = "__warm_up__";
+
+    //첫 페이지(offset 없음)와 이후 페이지(offset 포함)는 SQL 모양이 다르다
+    private static final List<Pageable> PAGES = List.of(PageRequest.of(0, 1), PageRequest.of(1, 1));
+
+    private final MemberRepository memberRepository;
+    private final MemberJpaRepository memberJpaRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private volatile boolean completed;
+    private volatile int executedShapes;
+    private volatile long elapsedMillis;
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void warmUp() {
+        long start = System.nanoTime();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+
+        int executed = 0;
+        for (MemberSearchCondition condition : conditionShapes()) {
+            executed += transactionTemplate.execute(status -> {
+                status.setRollbackOnly();
+                return warmUp(condition);
+            });
+        }
+
+        this.executedShapes = executed;
+        this.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        this.completed = true;
+        log.info("query warm-up finished: {} shapes in {} ms", executedShapes, elapsedMillis);
+    }
+
+    private int warmUp(MemberSearchCondition condition) {
+        int executed = 0;
+
+        //조건이 하나도 없는 search()는 전체 row를 읽으므로 제외 (page 쿼리는 limit 이 걸려 있음)
+        if (hasAnyCondition(condition)) {
+            memberRepository.search(condition);
+            memberJpaRepository.search(condition);
+            memberJpaRepository.searchByBuilder(condition);
+            executed += 3;
+        }
+
+        for (Pageable pageable : PAGES) {
+            memberRepository.searchPageSimple(condition, pageable);
+            memberRepository.searchPageComplex(condition, pageable);
+            executed += 2;
+        }
+        return executed;
+    }
+
+    /**
+     * MemberSearchCondition 의 조건 5개(username, usernameEqIgnoreCase, teamName, ageGoe, ageLoe)의 on/off 조합 32가지
+     */
+    static List<MemberSearchCondition> conditionShapes() {
+        List<MemberSearchCondition> shapes = new ArrayList<>();
+        for (int mask = 0; mask < 32; mask++) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            if ((mask & 1) != 0) condition.setUsername(NO_MATCH);
+            if ((mask & 2) != 0) condition.setTeamName(NO_MATCH);
+            if ((mask & 4) != 0) condition.setAgeGoe(Integer.MAX_VALUE);
+            if ((mask & 8) != 0) condition.setAgeLoe(Integer.MIN_VALUE);
+            if ((mask & 16) != 0) condition.setUsernameEqIgnoreCase(NO_MATCH);
+            shapes.add(condition);
+        }
+        return shapes;
+    }
+
+    private boolean hasAnyCondition(MemberSearchCondition condition) {
+        return condition.getUsername() != null
+                || condition.getUsernameEqIgnoreCase() != null
+                || condition.getTeamName() != null
+                || condition.getAgeGoe() != null
+                || condition.getAgeLoe() != null;
+    }
+
+    //readiness 그룹에 포함시켜 워밍업이 끝나기 전에는 트래픽을 받지 않도록 한다
+    @Override
+    public Health health() {
+        Health.Builder builder = completed ? Health.up() : Health.outOfService();
+        return builder
+                .withDetail("shapes", executedShapes)
+                .withDetail("elapsedMillis", elapsedMillis)
+                .build();
+    }
+}
@@ -3,11 +3,13 @@ package study.querydsl.repository.support;
 import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.Expression;
 import com.querydsl.core.types.dsl.PathBuilder;
+import com.querydsl.jpa.JPQLQuery;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.support.JpaEntityInformation;
 import
         org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
@@ -20,16 +22,23 @@ import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 @Repository
 public abstract class Querydsl4RepositorySupport {
     private final Class domainClass;
+    private final SortRegistry sortRegistry; //null 이면 Querydsl.applyPagination (요청마다 PathBuilder 로 정렬 프로퍼티 해석)
     private Querydsl querydsl;
     private EntityManager entityManager;
     private JPAQueryFactory queryFactory;
     public Querydsl4RepositorySupport(Class<?> domainClass) {
+        this(domainClass, null);
+    }
+    //정렬은 sortRegistry 에 등록한 키만, 마지막에 항상 id
+    public Querydsl4RepositorySupport(Class<?> domainClass, SortRegistry sortRegistry) {
         Assert.notNull(domainClass, "Domain class must not be null!");
         this.domainClass = domainClass;
+        this.sortRegistry = sortRegistry;
     }
     @Autowired
     public void setEntityManager(EntityManager entityManager) {
@@ -41,7 +50,7 @@ public abstract class Querydsl4RepositorySupport {
         this.entityManager = entityManager;
         this.querydsl = new Querydsl(entityManager, new
                 PathBuilder<>(path.getType(), path.getMetadata()));
-        this.queryFactory = new JPAQueryFactory(entityManager);
+        this.queryFactory = new ReadOnlyAwareQueryFactory(entityManager, ReadOnlyQueryHints.DEFAULT);
     }
     @PostConstruct
     public void validate() {
@@ -64,22 +73,63 @@ public abstract class Querydsl4RepositorySupport {
     protected <T> JPAQuery<T> selectFrom(EntityPath<T> from) {
         return getQueryFactory().selectFrom(from);
     }
+    //트랜잭션과 관계없이 힌트를 지정할 때 (ReadOnlyQueryHints.DEFAULT / WRITABLE)
+    protected <T> JPAQuery<T> select(Expression<T> expr, ReadOnlyQueryHints hints) {
+        return hints.applyTo(select(expr));
+    }
+    protected <T> JPAQuery<T> selectFrom(EntityPath<T> from, ReadOnlyQueryHints hints) {
+        return hints.applyTo(selectFrom(from));
+    }
     protected <T> Page<T> applyPagination(Pageable pageable,
                                           Function<JPAQueryFactory, JPAQuery> contentQuery) {
         JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable,
-                jpaQuery).fetch();
-        return PageableExecutionUtils.getPage(content, pageable,
-                jpaQuery::fetchCount);
+        LongSupplier total = countOf(jpaQuery);
+        List<T> content = paginate(pageable, jpaQuery).fetch();
+        return PageableExecutionUtils.getPage(content, pageable, total);
     }
     protected <T> Page<T> applyPagination(Pageable pageable,
                                           Function<JPAQueryFactory, JPAQuery> contentQuery, Function<JPAQueryFactory,
             JPAQuery> countQuery) {
         JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable,
-                jpaContentQuery).fetch();
+        List<T> content = paginate(pageable, jpaContentQuery).fetch();
         JPAQuery countResult = countQuery.apply(getQueryFactory());
         return PageableExecutionUtils.getPage(content, pageable,
                 countResult::fetchCount);
     }
+    //count 쿼리 없이 pageSize + 1 건으로 hasNext 를 정한다
+    protected <T> Slice<T> applySlicing(Pageable pageable,
+                                        Function<JPAQueryFactory, JPAQuery> contentQuery) {
+        JPAQuery<T> jpaQuery = contentQuery.apply(getQueryFactory());
+        if (sortRegistry != null) {
+            jpaQuery.orderBy(sortRegistry.orderBy(pageable.getSort()));
+        } else {
+            getQuerydsl().applySorting(pageable.getSort(), jpaQuery);
+        }
+        if (pageable.isPaged()) {
+            jpaQuery.offset(pageable.getOffset()).limit(Slices.limitOf(pageable));
+        }
+        return Slices.of(jpaQuery.fetch(), pageable);
+    }
+    //content 쿼리에서 order by, fetch join, 안 쓰는 to-one left join 을 뺀 count(id) 쿼리 (group by 가 있으면 fetchCount)
+    private LongSupplier countOf(JPAQuery<?> contentQuery) {
+        if (!CountQueries.isDerivable(contentQuery)) {
+            return contentQuery::fetchCount;
+        }
+        EntityPath<?> root = (EntityPath<?>) contentQuery.getMetadata().getJoins().get(0).getTarget();
+        String idName = JpaEntityInformationSupport.getEntityInformation(root.getType(), entityManager)
+                .getIdAttribute().getName();
+        Expression<?> id = new PathBuilder<>(root.getType(), root.getMetadata()).get(idName);
+        JPAQuery<Long> countQuery = CountQueries.derive(getQueryFactory(), contentQuery, id);
+        return countQuery::fetchOne;
+    }
+    //Querydsl.applyPagination 과 같이 query 에 offset/limit/order by 를 붙인다 (fetchCount 는 셋 다 쓰지 않음)
+    private <T> JPQLQuery<T> paginate(Pageable pageable, JPAQuery<T> query) {
+        if (sortRegistry == null) {
+            return getQuerydsl().applyPagination(pageable, query);
+        }
+        if (pageable.isPaged()) {
+            query.offset(pageable.getOffset()).limit(pageable.getPageSize());
+        }
+        return query.orderBy(sortRegistry.orderBy(pageable.getSort()));
+    }
 }
@@ -0,0 +1,34 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+
+/**
+ * 읽기 전용 트랜잭션(@Transactional(readOnly = true)) 안에서 만든 select 쿼리에 ReadOnlyQueryHints 를 자동으로 붙인다.
+ * 쿼리를 만드는 시점의 트랜잭션으로 판단하므로 쿼리는 만든 트랜잭션 안에서 실행해야 한다.
+ * 쓰기 트랜잭션에서 읽기만 할 쿼리는 hints.applyTo(query) 로 직접 붙인다.
+ *
+ * 요청 마감(QueryDeadline)이 있으면 남은 시간을 쿼리 timeout 으로 붙인다.
+ */
+public class ReadOnlyAwareQueryFactory extends JPAQueryFactory {
+
+    private final ReadOnlyQueryHints hints;
+
+    public ReadOnlyAwareQueryFactory(EntityManager em, ReadOnlyQueryHints hints) {
+        super(em);
+        this.hints = hints;
+    }
+
+    @Override
+    public JPAQuery<?> query() {
+        JPAQuery<?> query = super.query();
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            hints.applyTo(query);
+        }
+        QueryDeadline.applyTo(query);
+        return query;
+    }
+}
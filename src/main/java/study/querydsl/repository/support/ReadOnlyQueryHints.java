@@ -0,0 +1,53 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import org.hibernate.FlushMode;
+import org.hibernate.annotations.QueryHints;
+
+/**
+ * 조회 전용 쿼리 힌트
+ * - org.hibernate.readOnly : 로딩한 엔티티의 스냅샷(변경 감지용 복사본)을 만들지 않는다. 메모리와 flush 시 변경 감지 비용이 줄어든다
+ * - org.hibernate.flushMode : 쿼리 실행 전 자동 flush(AUTO)를 하지 않는다
+ * - org.hibernate.fetchSize : 드라이버 기본값 대신 한번에 가져올 row 수
+ *
+ * JPAQuery 의 힌트는 Map 이라 나중에 적용한 값이 이긴다.
+ */
+public final class ReadOnlyQueryHints {
+
+    //읽기 전용 트랜잭션에서 자동으로 적용하는 값
+    public static final ReadOnlyQueryHints DEFAULT = new ReadOnlyQueryHints(true, FlushMode.COMMIT, 500);
+
+    //자동 적용을 쿼리 단위로 되돌릴 때
+    public static final ReadOnlyQueryHints WRITABLE = new ReadOnlyQueryHints(false, FlushMode.AUTO, 0);
+
+    private final boolean readOnly;
+    private final FlushMode flushMode;
+    private final int fetchSize; //0 이면 지정하지 않는다
+
+    private ReadOnlyQueryHints(boolean readOnly, FlushMode flushMode, int fetchSize) {
+        this.readOnly = readOnly;
+        this.flushMode = flushMode;
+        this.fetchSize = fetchSize;
+    }
+
+    public ReadOnlyQueryHints withReadOnly(boolean readOnly) {
+        return new ReadOnlyQueryHints(readOnly, flushMode, fetchSize);
+    }
+
+    public ReadOnlyQueryHints withFlushMode(FlushMode flushMode) {
+        return new ReadOnlyQueryHints(readOnly, flushMode, fetchSize);
+    }
+
+    public ReadOnlyQueryHints withFetchSize(int fetchSize) {
+        return new ReadOnlyQueryHints(readOnly, flushMode, fetchSize);
+    }
+
+    public <T> JPAQuery<T> applyTo(JPAQuery<T> query) {
+        query.setHint(QueryHints.READ_ONLY, readOnly);
+        query.setHint(QueryHints.FLUSH_MODE, flushMode);
+        if (fetchSize > 0) {
+            query.setHint(QueryHints.FETCH_SIZE, fetchSize);
+        }
+        return query;
+    }
+}
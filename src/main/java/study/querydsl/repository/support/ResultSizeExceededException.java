@@ -0,0 +1,28 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+
+/**
+ * ResultSizeGuard 가 조회를 막았을 때 던진다. 어느 메서드가 왜 막혔는지 담고 있다.
+ */
+@Getter
+public class ResultSizeExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        ROW_CAP,                //결과가 maxRows 를 넘음
+        NO_SELECTIVE_CONDITION  //선택도 높은 조건(username, teamName 등) 없이 조회
+    }
+
+    private final String method;
+    private final Reason reason;
+    private final int maxRows;
+
+    public ResultSizeExceededException(String method, Reason reason, int maxRows) {
+        super(method + " rejected by result size guard: " + reason + " (max rows " + maxRows + ")");
+        this.method = method;
+        this.reason = reason;
+        this.maxRows = maxRows;
+    }
+}
@@ -0,0 +1,141 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * 리스트를 돌려주는 리포지토리 조회의 결과 건수 제한
+ * 조건 없는 동적 쿼리가 테이블 전체를 메모리에 올리는 것을 막는다. (MemberJpaRepository.searchByBuilder 주석 참고)
+ *
+ * - limit(maxRows + 1) 로 조회해서 maxRows 를 넘으면 ResultSizeExceededException(ROW_CAP)
+ *   maxRows 건까지만 읽으므로 전체를 읽고 나서 막는 것이 아니다.
+ * - requireSelectiveCondition=true 이면 선택도 높은 조건이 없는 조회는 실행하지 않고 NO_SELECTIVE_CONDITION
+ * - 막을 때마다 query.guard.rejected{method, reason} 카운터 증가
+ *   fetchOrFallback 안에서 난 ROW_CAP 은 호출자가 다른 방법(스트리밍)으로 응답하므로 query.guard.fallback{method} 로 센다.
+ *
+ * 여러 조건을 한 쿼리로 묶는 검색(searchBatch)은 조건 수를 maxBatchConditions 로 제한하고(BatchSizeExceededException),
+ * 건수는 조건마다 maxRows 까지 허용한다. (조건 하나씩 search 한 것과 같은 기준)
+ *
+ * 전체가 필요한 배치는 MemberBatchReader 를 사용한다.
+ */
+@Component
+public class ResultSizeGuard {
+
+    private final MeterRegistry meterRegistry;
+
+    @Getter
+    private final int maxRows;
+    private final boolean requireSelectiveCondition;
+    @Getter
+    private final boolean streamOnExceeded;
+    @Getter
+    private final int maxBatchConditions;
+
+    //fetchOrFallback 실행 중인 쓰레드
+    private final ThreadLocal<Boolean> fallback = new ThreadLocal<>();
+
+    public ResultSizeGuard(MeterRegistry meterRegistry,
+                           @Value("${query.guard.max-rows:10000}") int maxRows,
+                           @Value("${query.guard.require-selective-condition:false}") boolean requireSelectiveCondition,
+                           @Value("${query.guard.stream-on-exceeded:true}") boolean streamOnExceeded,
+                           @Value("${query.guard.max-batch-conditions:20}") int maxBatchConditions) {
+        this.meterRegistry = meterRegistry;
+        this.maxRows = maxRows;
+        this.requireSelectiveCondition = requireSelectiveCondition;
+        this.streamOnExceeded = streamOnExceeded;
+        this.maxBatchConditions = maxBatchConditions;
+    }
+
+    /**
+     * query.fetch() 대신 사용, selective 는 선택도 높은 조건이 걸려 있는지 여부
+     */
+    public <T> List<T> fetch(JPAQuery<T> query, String method, boolean selective) {
+        checkSelective(method, selective);
+
+        Long limit = query.getMetadata().getModifiers().getLimit();
+        if (limit != null && limit <= maxRows) {
+            return query.fetch();
+        }
+        List<T> result = query.limit(maxRows + 1L).fetch();
+        checkSize(result.size(), method);
+        return result;
+    }
+
+    /**
+     * 조건 conditions 개를 or 로 묶은 쿼리, 조건마다 maxRows 까지이므로 maxRows * conditions + 1 건까지만 읽는다.
+     * 그보다 많으면 어느 조건인가는 maxRows 를 넘는다. 나눈 뒤 조건별 결과는 checkSize 로 확인한다.
+     */
+    public <T> List<T> fetchBatch(JPAQuery<T> query, String method, boolean selective, int conditions) {
+        checkSelective(method, selective);
+        List<T> result = query.limit((long) maxRows * conditions + 1).fetch();
+        if (result.size() > (long) maxRows * conditions) {
+            throw reject(method, ResultSizeExceededException.Reason.ROW_CAP);
+        }
+        return result;
+    }
+
+    public void checkBatchSize(int conditions) {
+        if (conditions > maxBatchConditions) {
+            throw new BatchSizeExceededException(conditions, maxBatchConditions);
+        }
+    }
+
+    /**
+     * 건수를 넘으면 호출자가 다른 방법으로 처리하는 조회, ROW_CAP 이면 empty (거절로 세지 않는다)
+     * NO_SELECTIVE_CONDITION 은 그대로 던진다.
+     */
+    public <T> Optional<T> fetchOrFallback(Supplier<T> search) {
+        fallback.set(Boolean.TRUE);
+        try {
+            return Optional.of(search.get());
+        } catch (ResultSizeExceededException e) {
+            if (e.getReason() != ResultSizeExceededException.Reason.ROW_CAP) {
+                throw e;
+            }
+            return Optional.empty();
+        } finally {
+            fallback.remove();
+        }
+    }
+
+    /**
+     * 쿼리 없이 만들어진 결과(스냅샷, shard 병합, 색인 후보 id 등)의 건수 확인
+     */
+    public void checkSize(int size, String method) {
+        if (size > maxRows) {
+            throw reject(method, ResultSizeExceededException.Reason.ROW_CAP);
+        }
+    }
+
+    public void checkSelective(String method, boolean selective) {
+        if (requireSelectiveCondition && !selective) {
+            throw reject(method, ResultSizeExceededException.Reason.NO_SELECTIVE_CONDITION);
+        }
+    }
+
+    private ResultSizeExceededException reject(String method, ResultSizeExceededException.Reason reason) {
+        if (reason == ResultSizeExceededException.Reason.ROW_CAP && fallback.get() != null) {
+            Counter.builder("query.guard.fallback")
+                    .description("list queries over the row cap answered another way (streaming)")
+                    .tag("method", method)
+                    .register(meterRegistry)
+                    .increment();
+            return new ResultSizeExceededException(method, reason, maxRows);
+        }
+        Counter.builder("query.guard.rejected")
+                .description("list queries rejected by the result size guard")
+                .tag("method", method)
+                .tag("reason", reason.name())
+                .register(meterRegistry)
+                .increment();
+        return new ResultSizeExceededException(method, reason, maxRows);
+    }
+}
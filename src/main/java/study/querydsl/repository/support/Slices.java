@@ -0,0 +1,44 @@
+package study.querydsl.repository.support;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * count 쿼리 없는 Slice : pageSize + 1 건을 조회해서 한 건이 더 있으면 hasNext
+ */
+public final class Slices {
+
+    private Slices() {
+    }
+
+    //조회할 건수 (unpaged 면 제한 없음)
+    public static long limitOf(Pageable pageable) {
+        return pageable.isPaged() ? pageable.getPageSize() + 1L : Long.MAX_VALUE;
+    }
+
+    /**
+     * rows 는 offset 부터 limitOf(pageable) 건까지 조회한 결과
+     */
+    public static <T> Slice<T> of(List<T> rows, Pageable pageable) {
+        if (pageable.isUnpaged() || rows.size() <= pageable.getPageSize()) {
+            return new SliceImpl<>(rows, pageable, false);
+        }
+        return new SliceImpl<>(new ArrayList<>(rows.subList(0, pageable.getPageSize())), pageable, true);
+    }
+
+    /**
+     * 이미 메모리에 있는 전체 결과에서 자를 때 (스냅샷 등)
+     */
+    public static <T> Slice<T> fromAll(List<T> all, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(all, pageable, false);
+        }
+        int from = (int) Math.min(pageable.getOffset(), all.size());
+        int to = (int) Math.min(pageable.getOffset() + limitOf(pageable), all.size());
+        return of(new ArrayList<>(all.subList(from, to)), pageable);
+    }
+}
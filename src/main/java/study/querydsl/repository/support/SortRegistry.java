@@ -0,0 +1,179 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.types.Order;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.Column;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pageable 의 정렬 키 -> 미리 만들어 둔 OrderSpecifier
+ * Querydsl.applyPagination 처럼 요청마다 PathBuilder 로 프로퍼티를 찾지 않고, 허용한 키만 정렬한다.
+ *
+ * - sortable(key, path) : path 가 인덱스(@Id 또는 @Table(indexes) 의 첫 컬럼)가 아니면 등록 시점(기동 시)에 실패한다
+ * - rewrite(key, target) : 인덱스가 없는 키를 인덱스가 있는 키로 바꿔 정렬 (username -> usernameLower)
+ * - 그 외의 키는 UnsupportedSortException(REJECT) 이거나 무시(IGNORE)
+ * - 마지막에 항상 id 를 붙여 같은 값끼리의 순서를 고정한다. (페이지 사이에 중복/누락이 생기지 않음)
+ */
+public class SortRegistry {
+
+    public enum Unsupported {
+        REJECT,
+        IGNORE
+    }
+
+    private final Map<String, OrderSpecifier<?>> ascending;
+    private final Map<String, OrderSpecifier<?>> descending;
+    private final Map<String, String> rewrites;
+    private final OrderSpecifier<?> idAsc;
+    private final OrderSpecifier<?> idDesc;
+    private final Unsupported unsupported;
+
+    private SortRegistry(Builder builder) {
+        this.ascending = Collections.unmodifiableMap(new HashMap<>(builder.ascending));
+        this.descending = Collections.unmodifiableMap(new HashMap<>(builder.descending));
+        this.rewrites = Collections.unmodifiableMap(new HashMap<>(builder.rewrites));
+        this.idAsc = builder.ascending.get(builder.idKey);
+        this.idDesc = builder.descending.get(builder.idKey);
+        this.unsupported = builder.unsupported;
+    }
+
+    /**
+     * id 가 정렬 키이자 마지막 tie-breaker
+     */
+    public static Builder builder(String idKey, ComparableExpressionBase<?> id) {
+        return new Builder(idKey, id);
+    }
+
+    public OrderSpecifier<?>[] orderBy(Sort sort) {
+        List<OrderSpecifier<?>> result = new ArrayList<>();
+        boolean idSorted = false;
+        Order first = null;
+
+        for (Sort.Order order : sort) {
+            String key = rewrites.getOrDefault(order.getProperty(), order.getProperty());
+            OrderSpecifier<?> specifier = (order.isAscending() ? ascending : descending).get(key);
+            if (specifier == null) {
+                if (unsupported == Unsupported.REJECT) {
+                    throw new UnsupportedSortException(order.getProperty(), getSortable());
+                }
+                continue;
+            }
+            result.add(specifier);
+            idSorted |= specifier == idAsc || specifier == idDesc;
+            if (first == null) {
+                first = specifier.getOrder();
+            }
+        }
+
+        //첫 정렬과 같은 방향으로 붙여 인덱스를 한 방향으로 읽게 한다
+        if (!idSorted) {
+            result.add(first == Order.DESC ? idDesc : idAsc);
+        }
+        return result.toArray(new OrderSpecifier<?>[0]);
+    }
+
+    public Set<String> getSortable() {
+        Set<String> keys = new HashSet<>(ascending.keySet());
+        keys.addAll(rewrites.keySet());
+        return keys;
+    }
+
+    public static class Builder {
+        private final String idKey;
+        private final Map<String, OrderSpecifier<?>> ascending = new LinkedHashMap<>();
+        private final Map<String, OrderSpecifier<?>> descending = new LinkedHashMap<>();
+        private final Map<String, String> rewrites = new LinkedHashMap<>();
+        private final Map<Class<?>, Set<String>> indexed = new HashMap<>();
+        private Unsupported unsupported = Unsupported.REJECT;
+
+        private Builder(String idKey, ComparableExpressionBase<?> id) {
+            this.idKey = idKey;
+            sortable(idKey, id);
+        }
+
+        public Builder sortable(String key, ComparableExpressionBase<?> path) {
+            if (!isIndexed(path)) {
+                throw new IllegalStateException("sort key '" + key + "' (" + path + ") is not backed by an index");
+            }
+            ascending.put(key, path.asc());
+            descending.put(key, path.desc());
+            return this;
+        }
+
+        public Builder rewrite(String key, String targetKey) {
+            if (!ascending.containsKey(targetKey)) {
+                throw new IllegalStateException("rewrite target '" + targetKey + "' is not a sortable key");
+            }
+            rewrites.put(key, targetKey);
+            return this;
+        }
+
+        public Builder unsupported(Unsupported unsupported) {
+            this.unsupported = unsupported;
+            return this;
+        }
+
+        public SortRegistry build() {
+            return new SortRegistry(this);
+        }
+
+        private boolean isIndexed(ComparableExpressionBase<?> expression) {
+            if (!(expression instanceof Path)) {
+                return false;
+            }
+            Path<?> path = (Path<?>) expression;
+            Path<?> parent = path.getMetadata().getParent();
+            if (parent == null) {
+                return false;
+            }
+            Set<String> properties = indexed.computeIfAbsent(parent.getType(), Builder::indexedProperties);
+            return properties.contains(path.getMetadata().getName());
+        }
+
+        //@Id 필드와 @Table(indexes) 각 인덱스의 첫 컬럼 (정렬에 쓸 수 있는 건 첫 컬럼 뿐)
+        private static Set<String> indexedProperties(Class<?> entity) {
+            Set<String> leadingColumns = new HashSet<>();
+            Table table = entity.getAnnotation(Table.class);
+            if (table != null) {
+                for (Index index : table.indexes()) {
+                    leadingColumns.add(index.columnList().split(",")[0].trim().split("\\s+")[0].toLowerCase(Locale.ROOT));
+                }
+            }
+
+            Set<String> properties = new HashSet<>();
+            for (Class<?> type = entity; type != null && type != Object.class; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (field.isAnnotationPresent(Id.class) || leadingColumns.contains(columnName(field))) {
+                        properties.add(field.getName());
+                    }
+                }
+            }
+            return properties;
+        }
+
+        //@Column(name) 이 없으면 SpringPhysicalNamingStrategy 처럼 camelCase -> snake_case
+        private static String columnName(Field field) {
+            Column column = field.getAnnotation(Column.class);
+            if (column != null && !column.name().isEmpty()) {
+                return column.name().toLowerCase(Locale.ROOT);
+            }
+            return field.getName().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package study.querydsl.repository.support;
+
+import com.p6spy.engine.common.ConnectionInformation;
+import com.p6spy.engine.common.PreparedStatementInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.JdbcEventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 테이블별 데이터 버전 카운터 (ETag 등 "바뀌었는지"만 알면 되는 곳에서 사용)
+ * p6spy 로 실행되는 insert/update/delete/merge 를 보고 대상 테이블의 버전을 올린다.
+ * JPA flush, 벌크 execute(), JdbcTemplate 모두 같은 DataSource 를 거치므로 함께 잡힌다.
+ *
+ * 실행 시점과 커밋 시점에 두번 올린다.
+ * 실행~커밋 사이에 읽은 버전(이전 데이터와 짝)이 커밋 후 버전과 달라지도록 하기 위해서다.
+ * 기본 DataSource 만 추적한다. (MemberShards 의 shard DB 는 p6spy 를 거치지 않는다)
+ */
+@Component
+public class TableVersions extends JdbcEventListener {
+
+    //Hibernate 의 /* ... */ 주석(use_sql_comments)을 건너뛰고 DML 대상 테이블 이름을 찾는다
+    private static final Pattern DML = Pattern.compile(
+            "^\\s*(?:/\\*.*?\\*/\\s*)*(?:insert\\s+into|update|delete\\s+from|delete|merge\\s+into)\\s+([\\w.\"]+)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Map<ConnectionInformation, Set<String>> uncommitted = new ConcurrentHashMap<>();
+
+    /**
+     * 테이블 이름은 대소문자 구분 없음, 한번도 바뀌지 않았으면 0
+     */
+    public long version(String table) {
+        AtomicLong version = versions.get(normalize(table));
+        return version != null ? version.get() : 0;
+    }
+
+    @Override
+    public void onAfterExecute(PreparedStatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        written(statementInformation, statementInformation.getStatementQuery());
+    }
+
+    @Override
+    public void onAfterExecute(StatementInformation statementInformation, long timeElapsedNanos, String sql, SQLException e) {
+        written(statementInformation, sql);
+    }
+
+    @Override
+    public void onAfterExecuteUpdate(PreparedStatementInformation statementInformation, long timeElapsedNanos, int rowCount, SQLException e) {
+        written(statementInformation, statementInformation.getStatementQuery());
+    }
+
+    @Override
+    public void onAfterExecuteUpdate(StatementInformation statementInformation, long timeElapsedNanos, String sql, int rowCount, SQLException e) {
+        written(statementInformation, sql);
+    }
+
+    @Override
+    public void onAfterExecuteBatch(StatementInformation statementInformation, long timeElapsedNanos, int[] updateCounts, SQLException e) {
+        written(statementInformation, statementInformation.getStatementQuery());
+    }
+
+    @Override
+    public void onAfterCommit(ConnectionInformation connectionInformation, long timeElapsedNanos, SQLException e) {
+        Set<String> tables = uncommitted.remove(connectionInformation);
+        if (tables != null) {
+            tables.forEach(this::bump);
+        }
+    }
+
+    @Override
+    public void onAfterRollback(ConnectionInformation connectionInformation, long timeElapsedNanos, SQLException e) {
+        uncommitted.remove(connectionInformation); //실행 시점에 이미 올렸으므로 더 올릴 필요 없음
+    }
+
+    @Override
+    public void onAfterConnectionClose(ConnectionInformation connectionInformation, SQLException e) {
+        uncommitted.remove(connectionInformation);
+    }
+
+    private void written(StatementInformation statementInformation, String sql) {
+        if (sql == null) {
+            return;
+        }
+        Matcher matcher = DML.matcher(sql);
+        if (!matcher.find()) {
+            return;
+        }
+        String table = normalize(matcher.group(1));
+        bump(table);
+        uncommitted.computeIfAbsent(statementInformation.getConnectionInformation(), k -> ConcurrentHashMap.newKeySet()).add(table);
+    }
+
+    private void bump(String table) {
+        versions.computeIfAbsent(table, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static String normalize(String table) {
+        String name = table.replace("\"", "");
+        int dot = name.lastIndexOf('.');
+        return (dot >= 0 ? name.substring(dot + 1) : name).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,23 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * SortRegistry 에 없는(인덱스로 정렬할 수 없는) 정렬 키
+ */
+@Getter
+public class UnsupportedSortException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String property;
+    private final Set<String> sortable;
+
+    public UnsupportedSortException(String property, Set<String> sortable) {
+        super("sort by '" + property + "' is not supported, sortable: " + sortable);
+        this.property = property;
+        this.sortable = sortable;
+    }
+}
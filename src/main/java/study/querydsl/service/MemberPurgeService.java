@@ -0,0 +1,162 @@
+package study.querydsl.service;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.MemberBulkChangedEvent;
+import study.querydsl.entity.PurgeJob;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QPurgeJob.purgeJob;
+
+/**
+ * age > ? 회원 대량 삭제를 id 구간 단위 chunk 로 나눠 백그라운드에서 실행한다.
+ * delete 한 번으로 전체를 지우면 트랜잭션 하나가 너무 커지고(undo, lock) 테이블이 오래 잠긴다.
+ *
+ * chunk 마다 삭제 + 진행 상태(PurgeJob.lastId) 저장을 한 트랜잭션으로 커밋하므로
+ * 중간에 죽어도 재기동 시(ApplicationReadyEvent) RUNNING 상태의 작업을 이어서 처리한다.
+ *
+ * 작업은 전용 쓰레드 하나에서 순서대로 실행한다. (applicationTaskExecutor 쓰레드를 삭제가 끝날 때까지 붙잡지 않도록)
+ * 종료 시 쓰레드를 interrupt 하면 작업은 RUNNING 으로 남아 재기동 후 이어서 처리된다.
+ *
+ * 벌크 delete 는 영속성 컨텍스트와 cascade 를 거치지 않는다.
+ * - Member.team, Team.members 가 모두 CascadeType.ALL 이라 em.remove(member) 로 지우면 팀과 같은 팀 회원까지 지워진다.
+ *   여기서는 member row 만 지우고 team 은 남겨둔다.
+ * - 다른 영속성 컨텍스트에 이미 올라와 있는 Member, Team.members 컬렉션은 삭제 사실을 모른다 (QuerydslBasickTest.bulkUpdate 참고)
+ */
+@Slf4j
+@Service
+public class MemberPurgeService {
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+    private final long throttleMillis;
+
+    public MemberPurgeService(EntityManager em,
+                              PlatformTransactionManager transactionManager,
+                              ApplicationEventPublisher eventPublisher,
+                              @Value("${purge.chunk-size:1000}") int chunkSize,
+                              @Value("${purge.throttle-ms:50}") long throttleMillis) {
+        this.em = em;
+        this.queryFactory = new JPAQueryFactory(em);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+        this.throttleMillis = throttleMillis;
+    }
+
+    /**
+     * 삭제 작업을 등록하고 백그라운드로 시작한다.
+     */
+    public PurgeJob purgeOlderThan(int ageGt) {
+        PurgeJob job = transactionTemplate.execute(status -> {
+            Tuple range = queryFactory
+                    .select(member.id.min(), member.id.max())
+                    .from(member)
+                    .where(member.age.gt(ageGt))
+                    .fetchOne();
+
+            Long minId = range.get(member.id.min());
+            Long maxId = range.get(member.id.max());
+            PurgeJob newJob = minId == null ? new PurgeJob(ageGt, 1, 0) : new PurgeJob(ageGt, minId, maxId);
+            em.persist(newJob);
+            return newJob;
+        });
+
+        if (job.isRunning()) {
+            executor.execute(() -> run(job.getId()));
+        }
+        return job;
+    }
+
+    public Optional<PurgeJob> findJob(Long jobId) {
+        return Optional.ofNullable(em.find(PurgeJob.class, jobId));
+    }
+
+    /**
+     * 재기동 시 끝나지 않은 작업을 이어서 실행
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        List<PurgeJob> unfinished = queryFactory
+                .selectFrom(purgeJob)
+                .where(purgeJob.status.eq(PurgeJob.Status.RUNNING))
+                .fetch();
+
+        for (PurgeJob job : unfinished) {
+            log.info("resume purge job {} from id {}", job.getId(), job.getLastId() + 1);
+            executor.execute(() -> run(job.getId()));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * chunk 하나 = 트랜잭션 하나, chunk 사이에는 throttleMillis 만큼 쉰다.
+     */
+    void run(Long jobId) {
+        try {
+            boolean running = true;
+            while (running) {
+                running = transactionTemplate.execute(status -> deleteChunk(jobId));
+                eventPublisher.publishEvent(new MemberBulkChangedEvent("purge"));
+                if (running && throttleMillis > 0) {
+                    Thread.sleep(throttleMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); //RUNNING 으로 남겨 재기동 시 이어서 처리
+        } catch (RuntimeException e) {
+            log.error("purge job {} failed", jobId, e);
+            transactionTemplate.executeWithoutResult(status -> em.find(PurgeJob.class, jobId).fail());
+        }
+    }
+
+    private boolean deleteChunk(Long jobId) {
+        PurgeJob job = em.find(PurgeJob.class, jobId);
+        if (job == null || !job.isRunning()) {
+            return false;
+        }
+
+        long from = job.getLastId() + 1;
+        long to = Math.min(from + chunkSize - 1, job.getMaxId());
+
+        long deleted = queryFactory
+                .delete(member)
+                .where(
+                        member.id.between(from, to),
+                        member.age.gt(job.getAgeGt())
+                )
+                .execute();
+
+        job.progress(to, deleted);
+        log.info("purge job {} : ids {}~{} deleted {}, total {} ({} rows/s)",
+                jobId, from, to, deleted, job.getDeleted(), String.format("%.1f", job.getDeletedPerSecond()));
+        return job.isRunning();
+    }
+}
@@ -0,0 +1,170 @@
+package study.querydsl.web;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 관측한 응답 시간으로 동시 처리 한도(limit)를 조정하는 limiter (gradient 방식)
+ *
+ * - longRtt : 응답 시간의 장기 평균(EMA), 평소 상태의 기준값
+ * - gradient = clamp(tolerance * longRtt / rtt, 0.5, 1) : 지금 응답이 평소보다 느려졌으면 1 보다 작아져 limit 을 줄인다
+ * - newLimit = limit * gradient + sqrt(limit) : 느려지지 않았으면 조금씩(큐 여유분 만큼) 늘린다
+ * - 요청 실패(예외, 5xx)는 limit 을 backoff 비율만큼 바로 줄인다 (multiplicative decrease)
+ * in-flight 가 limit 의 절반도 안 되면 늘리지 않는다. (부하가 없는데 limit 만 커지는 것 방지)
+ *
+ * 클라이언트별로는 현재 limit 의 clientShare 비율까지만 동시에 처리한다.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    public enum Rejection {
+        LIMIT,          //전체 한도 초과 -> 503
+        CLIENT_QUOTA    //클라이언트 몫 초과 -> 429
+    }
+
+    private static final double SMOOTHING = 0.2;
+    private static final double LONG_RTT_ALPHA = 0.05;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double clientShare;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, AtomicInteger> clientInFlight = new ConcurrentHashMap<>();
+
+    private volatile double limit;
+    private double longRttNanos; //update 안에서만 사용
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, double clientShare) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.clientShare = clientShare;
+    }
+
+    /**
+     * 처리 가능하면 Token 을, 아니면 거절 사유(LIMIT, CLIENT_QUOTA)를 담은 Result 를 돌려준다.
+     * Token 을 받았으면 처리 후 반드시 release 해야 한다.
+     */
+    public Result tryAcquire(String client) {
+        int currentLimit = getLimit();
+        int clientLimit = Math.max(1, (int) (currentLimit * clientShare));
+
+        AtomicInteger clientCount = clientInFlight.computeIfAbsent(client, k -> new AtomicInteger());
+        if (clientCount.incrementAndGet() > clientLimit) {
+            releaseClient(client, clientCount);
+            return Result.rejected(Rejection.CLIENT_QUOTA);
+        }
+        if (inFlight.incrementAndGet() > currentLimit) {
+            inFlight.decrementAndGet();
+            releaseClient(client, clientCount);
+            return Result.rejected(Rejection.LIMIT);
+        }
+        return Result.acquired(new Token(client, clientCount, inFlight.get()));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    synchronized double getLongRttNanos() {
+        return longRttNanos;
+    }
+
+    /**
+     * 평소 응답 시간 기준 재시도까지 기다릴 시간(초), 최소 1초
+     */
+    public long retryAfterSeconds() {
+        double rtt;
+        synchronized (this) {
+            rtt = longRttNanos;
+        }
+        return Math.max(1, (long) Math.ceil(rtt * 2 / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    synchronized void onSample(long rttNanos, int inFlightAtStart, boolean failed) {
+        if (failed) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+            return;
+        }
+
+        longRttNanos = longRttNanos == 0 ? rttNanos : longRttNanos * (1 - LONG_RTT_ALPHA) + rttNanos * LONG_RTT_ALPHA;
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+        double newLimit = limit * gradient + (inFlightAtStart * 2 >= limit ? Math.sqrt(limit) : 0);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    private void releaseClient(String client, AtomicInteger clientCount) {
+        if (clientCount.decrementAndGet() <= 0) {
+            clientInFlight.remove(client, clientCount);
+        }
+    }
+
+    public class Token {
+        private final String client;
+        private final AtomicInteger clientCount;
+        private final int inFlightAtStart;
+        private final long startNanos = System.nanoTime();
+
+        private Token(String client, AtomicInteger clientCount, int inFlightAtStart) {
+            this.client = client;
+            this.clientCount = clientCount;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * 처리 후 한번만 호출, failed 면 limit 을 줄인다.
+         */
+        public void release(boolean failed) {
+            releaseWithoutSample();
+            onSample(System.nanoTime() - startNanos, inFlightAtStart, failed);
+        }
+
+        /**
+         * 응답 시간을 limit 계산에 쓰지 않고 반납 (DB 를 거의 거치지 않는 304, 잘못된 요청 4xx 등)
+         */
+        public void releaseWithoutSample() {
+            inFlight.decrementAndGet();
+            releaseClient(client, clientCount);
+        }
+    }
+
+    public static class Result {
+        private final Token token;
+        private final Rejection rejection;
+
+        private Result(Token token, Rejection rejection) {
+            this.token = token;
+            this.rejection = rejection;
+        }
+
+        static Result acquired(Token token) {
+            return new Result(token, null);
+        }
+
+        static Result rejected(Rejection rejection) {
+            return new Result(null, rejection);
+        }
+
+        public boolean isAcquired() {
+            return token != null;
+        }
+
+        public Token getToken() {
+            return token;
+        }
+
+        public Rejection getRejection() {
+            return rejection;
+        }
+    }
+}
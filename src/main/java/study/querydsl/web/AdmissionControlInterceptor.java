@@ -0,0 +1,134 @@
+package study.querydsl.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.regex.Pattern;
+
+/**
+ * 검색 요청 앞단의 부하 차단(admission control)
+ * DB 가 느려지면 AdaptiveConcurrencyLimiter 의 limit 이 줄어들고, 넘치는 요청은 리포지토리를 호출하지 않고 바로 거절한다.
+ * Tomcat 쓰레드와 커넥션이 느린 쿼리에 모두 묶여 전체가 멈추는 대신 일부 요청만 실패한다.
+ *
+ * - 전체 limit 초과 : 503 + Retry-After
+ * - 클라이언트별 몫 초과 : 429 + Retry-After
+ *
+ * 클라이언트 구분은 호출자가 마음대로 바꿀 수 없는 값으로 한다.
+ * - 직접 붙은 상대(remote address)가 trusted-proxies 가 아니면 그 주소, 헤더는 보지 않는다.
+ * - trusted-proxies(로드밸런서, 게이트웨이)를 거쳐 왔으면 client-header(게이트웨이가 인증 후 덮어쓰는 값, 설정한 경우)
+ *   또는 X-Forwarded-For 를 오른쪽부터 읽어 처음 나오는 trusted-proxies 가 아닌 주소
+ *
+ * 응답 시간 표본은 실제로 검색한 요청만 쓴다. 304(ETag), 4xx 는 DB 를 거의 거치지 않아 평소 응답 시간을 낮춰 잡게 만든다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "admission.enabled", havingValue = "true")
+public class AdmissionControlInterceptor implements HandlerInterceptor {
+
+    private static final String TOKEN_ATTRIBUTE = AdmissionControlInterceptor.class.getName() + ".token";
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final String clientHeader;
+    private final Pattern trustedProxies;
+    private final Counter limitRejected;
+    private final Counter quotaRejected;
+
+    public AdmissionControlInterceptor(MeterRegistry meterRegistry,
+                                       @Value("${admission.initial-limit:20}") int initialLimit,
+                                       @Value("${admission.min-limit:2}") int minLimit,
+                                       @Value("${admission.max-limit:100}") int maxLimit,
+                                       @Value("${admission.tolerance:1.5}") double tolerance,
+                                       @Value("${admission.client-share:0.5}") double clientShare,
+                                       @Value("${admission.client-header:}") String clientHeader,
+                                       @Value("${admission.trusted-proxies:127\\.0\\.0\\.1|0:0:0:0:0:0:0:1}") String trustedProxies) {
+        this.limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, tolerance, clientShare);
+        this.clientHeader = clientHeader;
+        this.trustedProxies = Pattern.compile(trustedProxies);
+
+        Gauge.builder("admission.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("current concurrency limit for search requests")
+                .register(meterRegistry);
+        Gauge.builder("admission.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .register(meterRegistry);
+        this.limitRejected = Counter.builder("admission.rejected")
+                .tag("reason", "limit")
+                .register(meterRegistry);
+        this.quotaRejected = Counter.builder("admission.rejected")
+                .tag("reason", "client_quota")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(TOKEN_ATTRIBUTE) != null) {
+            return true; //비동기 응답(StreamingResponseBody)의 async dispatch, 처음 받은 Token 을 afterCompletion 에서 반납
+        }
+        AdaptiveConcurrencyLimiter.Result result = limiter.tryAcquire(clientOf(request));
+        if (result.isAcquired()) {
+            request.setAttribute(TOKEN_ATTRIBUTE, result.getToken());
+            return true;
+        }
+
+        boolean quota = result.getRejection() == AdaptiveConcurrencyLimiter.Rejection.CLIENT_QUOTA;
+        (quota ? quotaRejected : limitRejected).increment();
+        log.debug("rejected {} ({}), limit {} in-flight {}",
+                request.getRequestURI(), result.getRejection(), limiter.getLimit(), limiter.getInFlight());
+
+        response.setStatus(quota ? HttpStatus.TOO_MANY_REQUESTS.value() : HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(limiter.retryAfterSeconds()));
+        return false;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object token = request.getAttribute(TOKEN_ATTRIBUTE);
+        if (token == null) {
+            return;
+        }
+        request.removeAttribute(TOKEN_ATTRIBUTE);
+        AdaptiveConcurrencyLimiter.Token admitted = (AdaptiveConcurrencyLimiter.Token) token;
+        int status = response.getStatus();
+        if (ex == null && (status == HttpStatus.NOT_MODIFIED.value() || (status >= 400 && status < 500))) {
+            admitted.releaseWithoutSample();
+        } else {
+            admitted.release(ex != null || status >= 500);
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    String clientOf(HttpServletRequest request) {
+        String peer = request.getRemoteAddr();
+        if (!isTrustedProxy(peer)) {
+            return peer;
+        }
+        if (StringUtils.hasText(clientHeader) && StringUtils.hasText(request.getHeader(clientHeader))) {
+            return "id:" + request.getHeader(clientHeader).trim(); //주소와 겹치지 않게
+        }
+        String[] forwarded = StringUtils.commaDelimitedListToStringArray(request.getHeader("X-Forwarded-For"));
+        for (int i = forwarded.length - 1; i >= 0; i--) {
+            String hop = forwarded[i].trim();
+            if (StringUtils.hasText(hop) && !isTrustedProxy(hop)) {
+                return hop;
+            }
+        }
+        return peer;
+    }
+
+    private boolean isTrustedProxy(String address) {
+        return address != null && trustedProxies.matcher(address).matches();
+    }
+}
@@ -0,0 +1,29 @@
+package study.querydsl.web;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 전용 풀(web-async, shard scatter)의 대기열이 차서 받지 못한 요청은 503 + Retry-After
+ * (TaskRejectedException 도 RejectedExecutionException)
+ */
+@Slf4j
+@RestControllerAdvice
+public class ExecutorRejectedAdvice {
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, Object>> rejected(RejectedExecutionException e) {
+        log.warn("executor queue full: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Collections.singletonMap("error", "EXECUTOR_SATURATED"));
+    }
+}
@@ -0,0 +1,73 @@
+package study.querydsl.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberAgeDeltaBuffer;
+import study.querydsl.repository.MemberBatchReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * 검색 결과 전체를 JSON 배열로 스트리밍
+ * ResultSizeGuard 가 건수 초과로 막은 조회는 리스트로 모으지 않고 MemberBatchReader 의 커서로 한 건씩 내보낸다.
+ * 커서는 기본 DataSource 만 읽으므로 shard 로 나눠 저장할 때(member.sharding.enabled=true)는 스트리밍하지 않는다.
+ */
+@Component
+public class MemberSearchStreamer {
+
+    private static final int FETCH_SIZE = 500;
+
+    private final MemberBatchReader memberBatchReader;
+    private final MemberAgeDeltaBuffer ageDeltaBuffer;
+    private final ObjectMapper objectMapper;
+    private final boolean sharded;
+
+    public MemberSearchStreamer(MemberBatchReader memberBatchReader, MemberAgeDeltaBuffer ageDeltaBuffer, ObjectMapper objectMapper,
+                                @Value("${member.sharding.enabled:false}") boolean sharded) {
+        this.memberBatchReader = memberBatchReader;
+        this.ageDeltaBuffer = ageDeltaBuffer;
+        this.objectMapper = objectMapper;
+        this.sharded = sharded;
+    }
+
+    public boolean canStream() {
+        return !sharded;
+    }
+
+    //이미 조회한 결과 (ResultSizeGuard 의 max-rows 이하)
+    public StreamingResponseBody write(List<MemberTeamDto> members) {
+        return out -> objectMapper.writeValue(out, members);
+    }
+
+    public StreamingResponseBody stream(MemberSearchCondition condition) {
+        return out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                memberBatchReader.forEach(condition, FETCH_SIZE, m -> write(generator, m));
+                generator.writeEndArray();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    private void write(JsonGenerator generator, Member m) {
+        Team team = m.getTeam();
+        MemberTeamDto dto = new MemberTeamDto(m.getId(), m.getUsername(), m.getAge() + ageDeltaBuffer.pending(m.getId()),
+                team != null ? team.getId() : null, team != null ? team.getName() : null);
+        try {
+            generator.writeObject(dto);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package study.querydsl.web;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Page<MemberTeamDto> 응답을 JsonGenerator 로 바로 써서 내보낸다.
+ * ObjectMapper 로 PageImpl 을 직렬화하면 pageable, sort 와 중복된 메타데이터(first, last, numberOfElements, empty ...)가 같이 나가고
+ * bean 분석 + 중간 버퍼링을 거친다. 여기서는 아래 형식만 스트리밍으로 쓴다.
+ *
+ * {"page":0,"size":10,"totalElements":100,"totalPages":10,
+ *  "content":[{"memberId":1,"username":"member1","age":10,"teamId":1,"teamName":"teamA"}, ...]}
+ *
+ * Accept 헤더로 application/json, application/x-jackson-smile, application/cbor 중 선택한다. (압축은 server.compression)
+ */
+public class MemberTeamPageHttpMessageConverter extends AbstractGenericHttpMessageConverter<Page<MemberTeamDto>> {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+    public static final MediaType APPLICATION_CBOR = MediaType.APPLICATION_CBOR;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final JsonFactory smileFactory = new SmileFactory();
+    private final JsonFactory cborFactory = new CBORFactory();
+
+    public MemberTeamPageHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON, APPLICATION_SMILE, APPLICATION_CBOR);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Page.class.isAssignableFrom(clazz);
+    }
+
+    //Page<MemberTeamDto> 로 선언된 반환 타입만 처리, 나머지 Page 는 기본 Jackson 변환기로
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (type == null || !canWrite(mediaType)) {
+            return false;
+        }
+        ResolvableType resolved = ResolvableType.forType(type);
+        return Page.class.isAssignableFrom(resolved.toClass())
+                && resolved.as(Page.class).getGeneric(0).toClass() == MemberTeamDto.class;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected void writeInternal(Page<MemberTeamDto> page, Type type, HttpOutputMessage outputMessage) throws IOException {
+        MediaType contentType = outputMessage.getHeaders().getContentType();
+        try (JsonGenerator generator = factoryFor(contentType).createGenerator(outputMessage.getBody(), JsonEncoding.UTF8)) {
+            write(page, generator);
+        }
+    }
+
+    public static void write(Page<MemberTeamDto> page, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("page", page.getNumber());
+        generator.writeNumberField("size", page.getSize());
+        generator.writeNumberField("totalElements", page.getTotalElements());
+        generator.writeNumberField("totalPages", page.getTotalPages());
+
+        generator.writeArrayFieldStart("content");
+        for (MemberTeamDto dto : page.getContent()) {
+            generator.writeStartObject();
+            generator.writeNumberField("memberId", dto.getMemberId());
+            generator.writeStringField("username", dto.getUsername());
+            generator.writeNumberField("age", dto.getAge());
+            if (dto.getTeamId() != null) { //팀이 없으면 teamId, teamName 생략
+                generator.writeNumberField("teamId", dto.getTeamId());
+                generator.writeStringField("teamName", dto.getTeamName());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private JsonFactory factoryFor(MediaType contentType) {
+        if (APPLICATION_SMILE.isCompatibleWith(contentType)) {
+            return smileFactory;
+        }
+        if (APPLICATION_CBOR.isCompatibleWith(contentType)) {
+            return cborFactory;
+        }
+        return jsonFactory;
+    }
+
+    @Override
+    public Page<MemberTeamDto> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("write only", inputMessage);
+    }
+
+    @Override
+    protected Page<MemberTeamDto> readInternal(Class<? extends Page<MemberTeamDto>> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("write only", inputMessage);
+    }
+}
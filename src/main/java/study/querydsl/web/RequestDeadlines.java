@@ -0,0 +1,98 @@
+package study.querydsl.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import study.querydsl.repository.support.QueryDeadline;
+
+import javax.persistence.EntityManager;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청 단위 마감 시간
+ * 조회를 WebAsyncTask 로 실행해서 Tomcat 이 요청 쓰레드 밖에서 타임아웃과 클라이언트 연결 끊김을 감지하게 한다.
+ *
+ * - 실행 쓰레드에 QueryDeadline 을 걸어 모든 Querydsl 쿼리에 남은 시간만큼의 timeout 을 붙인다
+ * - 마감 시각이 지나거나(onTimeout) 클라이언트가 끊으면(onError) 실행 중인 쿼리를 Session.cancelQuery() 로 취소하고
+ *   request.deadline.cancelled{reason} 으로 센다. (취소되지 않아도 JDBC timeout 으로 DB 에서 끝난다)
+ *   shard 쿼리처럼 다른 쓰레드의 Session 도 같은 QueryDeadline 에 등록되어 있으면 같이 취소된다.
+ * - 예산은 timeout-ms, 클라이언트가 header 로 더 짧게 줄 수 있다
+ *
+ * 실행 쓰레드의 EntityManager 는 open-in-view 가 넘겨준 요청의 EntityManager 다.
+ * 실행 쓰레드 풀은 WebConfig 의 web-async 전용 풀이다.
+ */
+@Slf4j
+@Component
+public class RequestDeadlines {
+
+    private final EntityManager em;
+    private final MeterRegistry meterRegistry;
+    private final long timeoutMillis;
+    private final String header;
+
+    public RequestDeadlines(EntityManager em, MeterRegistry meterRegistry,
+                            @Value("${request-deadline.timeout-ms:5000}") long timeoutMillis,
+                            @Value("${request-deadline.header:X-Request-Timeout-Ms}") String header) {
+        this.em = em;
+        this.meterRegistry = meterRegistry;
+        this.timeoutMillis = timeoutMillis;
+        this.header = header;
+    }
+
+    public <T> WebAsyncTask<T> withDeadline(WebRequest request, Callable<T> call) {
+        long budgetMillis = budgetMillis(request);
+        QueryDeadline deadline = new QueryDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+
+        WebAsyncTask<T> task = new WebAsyncTask<>(budgetMillis, () -> {
+            QueryDeadline.set(deadline);
+            //공유 EntityManager 프록시는 Session 을 구현하므로 unwrap 하면 프록시 그대로다. 그러면 onTimeout/onError 를 처리하는
+            //다른 쓰레드에서 그 쓰레드의 EntityManager 로 cancelQuery 가 가므로 이 쓰레드에 묶인 실제 Session 을 꺼내 둔다.
+            Session session = (Session) em.getDelegate();
+            deadline.register(session);
+            try {
+                return call.call();
+            } finally {
+                deadline.unregister(session);
+                QueryDeadline.clear();
+            }
+        });
+        task.onTimeout(() -> cancel(deadline, "timeout")); //503 (AsyncRequestTimeoutException)
+        task.onError(() -> cancel(deadline, "disconnect"));
+        return task;
+    }
+
+    long budgetMillis(WebRequest request) {
+        String requested = request.getHeader(header);
+        if (StringUtils.hasText(requested)) {
+            try {
+                return Math.max(1, Math.min(timeoutMillis, Long.parseLong(requested.trim())));
+            } catch (NumberFormatException ignored) {
+                //잘못된 값이면 기본 예산
+            }
+        }
+        return timeoutMillis;
+    }
+
+    //RESULT_NONE : 결과를 정하지 않고 기본 처리(타임아웃 503, 오류)를 이어간다
+    @SuppressWarnings("unchecked")
+    private <T> T cancel(QueryDeadline deadline, String reason) {
+        int cancelled = deadline.cancel();
+        if (cancelled > 0) {
+            log.info("cancelled running queries of {} sessions: {}", cancelled, reason);
+            Counter.builder("request.deadline.cancelled")
+                    .description("requests whose running queries were cancelled on timeout or client disconnect")
+                    .tag("reason", reason)
+                    .register(meterRegistry)
+                    .increment();
+        }
+        return (T) CallableProcessingInterceptor.RESULT_NONE;
+    }
+}
@@ -0,0 +1,38 @@
+package study.querydsl.web;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import study.querydsl.repository.support.BatchSizeExceededException;
+import study.querydsl.repository.support.ResultSizeExceededException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ResultSizeGuard 가 막은 조회는 422 와 함께 사유를 돌려준다.
+ * 조건 수가 너무 많은 /test/batch 는 요청 자체가 잘못된 것이므로 400
+ */
+@RestControllerAdvice
+public class ResultSizeGuardAdvice {
+
+    @ExceptionHandler(ResultSizeExceededException.class)
+    public ResponseEntity<Map<String, Object>> resultSizeExceeded(ResultSizeExceededException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", "RESULT_SIZE_EXCEEDED");
+        body.put("reason", e.getReason());
+        body.put("method", e.getMethod());
+        body.put("maxRows", e.getMaxRows());
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(body);
+    }
+
+    @ExceptionHandler(BatchSizeExceededException.class)
+    public ResponseEntity<Map<String, Object>> batchSizeExceeded(BatchSizeExceededException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", "BATCH_SIZE_EXCEEDED");
+        body.put("conditions", e.getConditions());
+        body.put("maxConditions", e.getMaxConditions());
+        return ResponseEntity.badRequest().body(body);
+    }
+}
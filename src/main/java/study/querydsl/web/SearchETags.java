@@ -0,0 +1,83 @@
+package study.querydsl.web;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.WebRequest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberAgeDeltaBuffer;
+import study.querydsl.repository.support.TableVersions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * 검색 응답의 ETag = 프로세스 epoch + member, team 테이블 버전 + 나이 증감 버퍼 generation + 정규화한 요청(경로, 조건, 페이지, Accept)
+ * 버전이 그대로면 같은 요청의 응답도 같으므로 If-None-Match 가 맞으면 DB 조회 없이 304 를 보낸다.
+ *
+ * - 테이블 버전은 메모리 카운터라 재기동하면 0 부터 다시 센다. 기동마다 새로 만드는 epoch 를 넣어 이전 프로세스의 ETag 와 겹치지 않게 한다.
+ *   (여러 인스턴스 뒤에서는 인스턴스마다 ETag 가 달라 304 가 덜 나올 뿐 틀린 304 는 나오지 않는다)
+ * - 아직 flush 되지 않은 나이 증감분도 응답에 더해지므로 MemberAgeDeltaBuffer.generation 을 넣는다.
+ * - member.sharding.enabled 이면 shard DB 의 변경은 TableVersions 로 알 수 없으므로 ETag 를 쓰지 않는다.
+ * - member.snapshot.enabled 이면 스냅샷이 staleness 만큼 늦은 내용을 돌려줄 수 있어 지금 테이블 버전과 짝이 맞지 않으므로 ETag 를 쓰지 않는다.
+ *   (늦은 내용에 새 버전의 ETag 가 붙으면 변경이 반영된 뒤에도 304 가 나간다)
+ * - /test 와 /test/slice 는 같은 조건이라도 응답 모양이 다르므로 경로도 넣는다.
+ *
+ * 인코딩(gzip 등)에 따라 바이트가 달라지므로 weak ETag 를 쓴다.
+ */
+@Component
+public class SearchETags {
+
+    private final String epoch = UUID.randomUUID().toString();
+
+    private final TableVersions tableVersions;
+    private final MemberAgeDeltaBuffer ageDeltaBuffer;
+    private final boolean sharded;
+    private final boolean snapshot;
+
+    public SearchETags(TableVersions tableVersions, MemberAgeDeltaBuffer ageDeltaBuffer,
+                       @Value("${member.sharding.enabled:false}") boolean sharded,
+                       @Value("${member.snapshot.enabled:false}") boolean snapshot) {
+        this.tableVersions = tableVersions;
+        this.ageDeltaBuffer = ageDeltaBuffer;
+        this.sharded = sharded;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * 변경이 없으면 304 로 응답하도록 표시하고 true, 컨트롤러는 바로 null 을 반환하면 된다.
+     * shard 나 스냅샷을 쓰면 항상 false (ETag 없음)
+     */
+    public boolean checkNotModified(WebRequest request, MemberSearchCondition condition, Pageable pageable) {
+        if (sharded || snapshot) {
+            return false;
+        }
+        return request.checkNotModified(etag(request, condition, pageable));
+    }
+
+    public String etag(WebRequest request, MemberSearchCondition condition, Pageable pageable) {
+        String key = String.join("|",
+                epoch,
+                "member=" + tableVersions.version("member"),
+                "team=" + tableVersions.version("team"),
+                "ageDelta=" + ageDeltaBuffer.generation(),
+                request.getDescription(false), //uri=/test, uri=/test/slice
+                normalize(condition.getUsername()),
+                normalize(condition.getUsernameEqIgnoreCase()),
+                normalize(condition.getTeamName()),
+                String.valueOf(condition.getAgeGoe()),
+                String.valueOf(condition.getAgeLoe()),
+                pageable.isPaged() ? pageable.getPageNumber() + "," + pageable.getPageSize() : "unpaged",
+                pageable.getSort().toString(),
+                normalize(request.getHeader(HttpHeaders.ACCEPT)));
+        return "W/\"" + DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    //조건 없음과 빈 문자열은 같은 검색 (BooleanExpression 헬퍼가 hasText 로 거른다)
+    private static String normalize(String value) {
+        return StringUtils.hasText(value) ? value.trim() : "";
+    }
+}
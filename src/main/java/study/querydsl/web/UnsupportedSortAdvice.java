@@ -0,0 +1,25 @@
+package study.querydsl.web;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import study.querydsl.repository.support.UnsupportedSortException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SortRegistry 에 없는 정렬 키(?sort=age 등)는 400 과 함께 허용하는 키를 돌려준다.
+ */
+@RestControllerAdvice
+public class UnsupportedSortAdvice {
+
+    @ExceptionHandler(UnsupportedSortException.class)
+    public ResponseEntity<Map<String, Object>> unsupportedSort(UnsupportedSortException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", "UNSUPPORTED_SORT");
+        body.put("property", e.getProperty());
+        body.put("sortable", e.getSortable());
+        return ResponseEntity.badRequest().body(body);
+    }
+}
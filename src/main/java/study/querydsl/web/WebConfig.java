@@ -0,0 +1,59 @@
+package study.querydsl.web;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ObjectProvider<AdmissionControlInterceptor> admissionControl;
+    private final ThreadPoolTaskExecutor asyncExecutor;
+
+    /**
+     * WebAsyncTask(RequestDeadlines) 는 applicationTaskExecutor 대신 전용 풀에서 실행한다.
+     * 기본 풀(core 8, 대기열 무제한)을 @Async 작업, 버퍼 flush 와 같이 쓰면 느린 검색이 쌓일 때 서로 밀어내고,
+     * 대기열이 무제한이라 마감이 지난 요청도 계속 쌓인다. 대기열이 차면 503 (ExecutorRejectedAdvice)
+     */
+    public WebConfig(ObjectProvider<AdmissionControlInterceptor> admissionControl,
+                     @Value("${web.async.threads:16}") int threads,
+                     @Value("${web.async.queue:100}") int queue) {
+        this.admissionControl = admissionControl;
+        this.asyncExecutor = new ThreadPoolTaskExecutor();
+        asyncExecutor.setCorePoolSize(threads);
+        asyncExecutor.setMaxPoolSize(threads);
+        asyncExecutor.setQueueCapacity(queue);
+        asyncExecutor.setThreadNamePrefix("web-async-");
+        asyncExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        asyncExecutor.shutdown();
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(asyncExecutor);
+    }
+
+    //기본 Jackson 변환기보다 먼저 보도록 맨 앞에 등록
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new MemberTeamPageHttpMessageConverter());
+    }
+
+    //검색 요청만 부하 차단 대상 (admission.enabled=true 일 때)
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        admissionControl.ifAvailable(interceptor -> registry.addInterceptor(interceptor).addPathPatterns("/test", "/test/**"));
+    }
+}
@@ -0,0 +1,126 @@
+package study.querydsl.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.profiles.active=local",
+        "init-member.size=10",
+        "init-member.batch-size=4",
+        "init-member.gate-readiness=true",
+        "querydsl.warm-up.enabled=true",
+        "management.endpoint.health.probes.enabled=true",
+        "management.endpoint.health.group.readiness.include=readinessState,queryWarmUp,initMember"
+})
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class) //기동 때 시작한 적재를 먼저 확인한다
+class InitMemberTest {
+
+    //ApplicationReadyEvent 로 시작한 적재를 첫 batch 에서 붙잡아 둔다
+    static final CountDownLatch release = new CountDownLatch(1);
+    static final AtomicBoolean fail = new AtomicBoolean();
+
+    @TestConfiguration
+    static class BlockingSeedConfig {
+        @Bean
+        @Primary
+        InitMember.InitMemberService blockingInitMemberService() {
+            return new InitMember.InitMemberService() {
+                @Override
+                @Transactional
+                public void init(Team[] teams, int from, int to) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (fail.get()) {
+                        throw new IllegalStateException("seed failed");
+                    }
+                    super.init(teams, from, to);
+                }
+            };
+        }
+    }
+
+    @Autowired
+    InitMember initMember;
+    @Autowired
+    HealthEndpoint healthEndpoint;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void after() {
+        release.countDown();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member m").executeUpdate();
+            em.createQuery("delete from Team t").executeUpdate();
+        });
+    }
+
+    @Test
+    @Order(1) // 워밍업은 기동 중에 끝나고, 적재가 끝날 때까지 readiness 는 OUT_OF_SERVICE
+    void readinessGatedUntilSeeded() throws Exception {
+        assertThat(healthEndpoint.healthForPath("readiness", "queryWarmUp").getStatus()).isEqualTo(Status.UP);
+        assertThat(initMember.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        assertThat(healthEndpoint.healthForPath("readiness").getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        release.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (healthEndpoint.healthForPath("readiness").getStatus() != Status.UP && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(healthEndpoint.healthForPath("readiness").getStatus()).isEqualTo(Status.UP);
+        assertThat(initMember.health().getDetails()).containsEntry("seeded", 10);
+        Long members = em.createQuery("select count(m) from Member m", Long.class).getSingleResult();
+        assertThat(members).isEqualTo(10);
+    }
+
+    @Test
+    @Order(2) // 적재가 실패하면 예외를 남기고 readiness 는 DOWN
+    void seedFailureReported() throws Exception {
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (initMember.health().getStatus() != Status.UP && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+
+        fail.set(true);
+        try {
+            initMember.initPost(); //@Async
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (initMember.health().getStatus() != Status.DOWN && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(initMember.health().getStatus()).isEqualTo(Status.DOWN);
+            assertThat(initMember.health().getDetails()).containsEntry("error", IllegalStateException.class.getName() + ": seed failed");
+            assertThat(healthEndpoint.healthForPath("readiness").getStatus()).isEqualTo(Status.DOWN);
+        } finally {
+            fail.set(false);
+        }
+    }
+}
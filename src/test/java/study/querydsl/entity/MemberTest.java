@@ -1,6 +1,9 @@
 package study.querydsl.entity;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.Commit;
 import org.springframework.transaction.annotation.Transactional;
@@ -8,8 +11,10 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
@@ -19,6 +24,9 @@ class MemberTest {
     @PersistenceContext
     EntityManager em;
 
+    @Value("${spring.jpa.properties.hibernate.default_batch_fetch_size}")
+    int batchFetchSize;
+
     @Test
     public void testEntity() {
         Team teamA = new Team("teamA");
@@ -47,4 +55,46 @@ class MemberTest {
             System.out.println("-> member.team = " + member.getTeam());
         }
     }
-}
\ No newline at end of file
+
+    @Test // lazy 프록시 / 컬렉션 N 개를 건드리면 ceil(N / batch) 번만 조회
+    public void batchFetch() {
+        int size = batchFetchSize * 2 + 1;
+        List<Long> teamIds = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Team team = new Team("batchTeam" + i);
+            em.persist(team);
+            em.persist(new Member("batchMember" + i, i, team));
+            teamIds.add(team.getId());
+        }
+        em.flush();
+        em.clear();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        int expectedBatches = (size + batchFetchSize - 1) / batchFetchSize;
+
+        //Member.team
+        statistics.clear();
+        List<Member> members = em.createQuery("select m from Member m where m.username like 'batchMember%'", Member.class)
+                .getResultList();
+        for (Member member : members) {
+            member.getTeam().getName();
+        }
+        assertThat(members).hasSize(size);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1 + expectedBatches);
+        em.clear();
+
+        //Team.members
+        statistics.clear();
+        List<Team> teams = em.createQuery("select t from Team t where t.id in :ids", Team.class)
+                .setParameter("ids", teamIds)
+                .getResultList();
+        for (Team team : teams) {
+            team.getMembers().size();
+        }
+        assertThat(teams).hasSize(size);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1 + expectedBatches);
+
+        statistics.setStatisticsEnabled(false);
+    }
+}
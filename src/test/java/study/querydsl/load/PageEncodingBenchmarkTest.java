@@ -0,0 +1,97 @@
+package study.querydsl.load;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.web.MemberTeamPageHttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * /test 응답 한 페이지의 크기(raw, gzip)와 직렬화 CPU 시간 비교
+ * 기본 Jackson(PageImpl) vs 스트리밍 compact JSON / Smile / CBOR
+ * -Dload.pageSize=100 -Dload.iterations=20000
+ */
+@Tag("load")
+class PageEncodingBenchmarkTest {
+
+    int pageSize = Integer.getInteger("load.pageSize", 100);
+    int iterations = Integer.getInteger("load.iterations", 20_000);
+
+    interface Encoder {
+        byte[] encode(Page<MemberTeamDto> page) throws IOException;
+    }
+
+    @Test
+    void encodings() throws IOException {
+        List<MemberTeamDto> content = new ArrayList<>();
+        for (int i = 0; i < pageSize; i++) {
+            content.add(new MemberTeamDto((long) i + 1, "member" + i, i % 100, (long) i % 2 + 1, i % 2 == 0 ? "teamA" : "teamB"));
+        }
+        Page<MemberTeamDto> page = new PageImpl<>(content, PageRequest.of(3, pageSize), 100_000);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        System.out.printf("pageSize=%d iterations=%d%n", pageSize, iterations);
+        System.out.printf("%-22s %10s %10s %14s%n", "encoding", "bytes", "gzip", "cpu us/page");
+
+        long jackson = report("jackson PageImpl", page, objectMapper::writeValueAsBytes);
+        JsonFactory json = new JsonFactory();
+        JsonFactory smile = new SmileFactory();
+        JsonFactory cbor = new CBORFactory();
+        long compact = report("compact json", page, p -> stream(json, p));
+        report("compact smile", page, p -> stream(smile, p));
+        report("compact cbor", page, p -> stream(cbor, p));
+
+        assertThat(compact).isLessThan(jackson);
+    }
+
+    private long report(String name, Page<MemberTeamDto> page, Encoder encoder) throws IOException {
+        byte[] body = encoder.encode(page);
+
+        //워밍업
+        for (int i = 0; i < iterations / 4; i++) {
+            encoder.encode(page);
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long start = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < iterations; i++) {
+            encoder.encode(page);
+        }
+        double cpuMicros = (threads.getCurrentThreadCpuTime() - start) / 1000.0 / iterations;
+
+        System.out.printf("%-22s %10d %10d %14.1f%n", name, body.length, gzip(body).length, cpuMicros);
+        return body.length;
+    }
+
+    private byte[] stream(JsonFactory factory, Page<MemberTeamDto> page) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            MemberTeamPageHttpMessageConverter.write(page, generator);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+}
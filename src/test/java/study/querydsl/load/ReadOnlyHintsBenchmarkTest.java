@@ -0,0 +1,140 @@
+package study.querydsl.load;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.support.ReadOnlyQueryHints;
+
+import javax.persistence.EntityManager;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * basicSelect 처럼 엔티티를 대량으로 읽고 flush 할 때 기본 힌트 vs ReadOnlyQueryHints 비교
+ * 영속성 컨텍스트에 남아있는 heap(GC 후), 조회 + flush(변경 감지) CPU 시간
+ * -Dload.rows=200000 -Dload.rounds=5
+ */
+@Tag("load")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:readonlyhints;DB_CLOSE_DELAY=-1",
+        "logging.level.org.hibernate.SQL=info",
+        "decorator.datasource.p6spy.enable-logging=false"
+})
+@Transactional
+class ReadOnlyHintsBenchmarkTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    JPAQueryFactory queryFactory;
+
+    int rows = Integer.getInteger("load.rows", 200_000);
+    int rounds = Integer.getInteger("load.rounds", 5);
+
+    @BeforeEach
+    void seed() {
+        queryFactory = new JPAQueryFactory(em);
+        Integer count = jdbcTemplate.queryForObject("select count(*) from member", Integer.class);
+        if (count != null && count >= rows) {
+            return;
+        }
+
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            String username = "member" + i;
+            batch.add(new Object[]{i + 1L, username, username, i % 100});
+            if (batch.size() == 10_000) {
+                insert(batch);
+            }
+        }
+        insert(batch);
+    }
+
+    private void insert(List<Object[]> batch) {
+        jdbcTemplate.batchUpdate("insert into member (member_id, username, username_lower, age) values (?, ?, ?, ?)", batch);
+        batch.clear();
+    }
+
+    @Test
+    void basicSelect() {
+        //워밍업
+        measure(UnaryOperator.identity());
+        measure(ReadOnlyQueryHints.DEFAULT::applyTo);
+
+        Result plain = new Result();
+        Result readOnly = new Result();
+        for (int i = 0; i < rounds; i++) {
+            plain.add(measure(UnaryOperator.identity()));
+            readOnly.add(measure(ReadOnlyQueryHints.DEFAULT::applyTo));
+        }
+
+        System.out.printf("rows=%d rounds=%d%n", rows, rounds);
+        System.out.printf("default hints  : %s%n", plain);
+        System.out.printf("read-only hints: %s%n", readOnly);
+
+        assertThat(readOnly.retainedBytes).isLessThan(plain.retainedBytes);
+    }
+
+    private Result measure(UnaryOperator<JPAQuery<Member>> hints) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        em.clear();
+        long before = usedHeap();
+
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        List<Member> result = hints.apply(queryFactory.selectFrom(member)).fetch();
+        em.flush(); //변경 감지 비용
+        long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+
+        long retained = usedHeap() - before;
+        assertThat(result).hasSize(rows);
+        em.clear();
+
+        Result r = new Result();
+        r.cpuNanos = cpu;
+        r.retainedBytes = retained;
+        r.count = 1;
+        return r;
+    }
+
+    private long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static class Result {
+        long cpuNanos;
+        long retainedBytes;
+        int count;
+
+        void add(Result other) {
+            cpuNanos += other.cpuNanos;
+            retainedBytes += other.retainedBytes;
+            count += other.count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("cpu %.1f ms, retained heap %.1f MB",
+                    cpuNanos / 1_000_000.0 / count, retainedBytes / 1024.0 / 1024 / count);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package study.querydsl.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * /test 검색 API 부하 테스트 (embedded H2, 외부 서비스 없음)
+ * 기본 test 태스크에서는 제외되고 ./gradlew loadTest 로 실행한다.
+ *
+ * -Dload.mode=concurrency|rate  고정 동시성 / 고정 도착률
+ * -Dload.concurrency=8          동시 요청 수 (concurrency 모드)
+ * -Dload.rate=200               초당 요청 수 (rate 모드)
+ * -Dload.requests=5000          측정 요청 수 (워밍업 제외)
+ * -Dload.members=10000          적재할 회원 수
+ * -Dload.label=...              리포트 파일 이름에 붙일 라벨 (커밋 해시 등)
+ * -Dload.conditions=...         검색 조건 mix, ';' 로 구분한 query string, 앞에 "가중치:" 를 붙이면 그 비율로 보낸다
+ *                               (예: "3:teamName=teamA;1:ageGoe=90;1:" , 마지막은 조건 없음, 생략하면 CONDITIONS 를 같은 비율로)
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+        "logging.level.org.hibernate.SQL=info",
+        "decorator.datasource.p6spy.enable-logging=false"
+})
+class SearchLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchLoadTest.class);
+
+    //기본 검색 조건 mix (query string), page 깊이와 조합해서 요청을 만든다
+    private static final List<String> CONDITIONS = List.of(
+            "",
+            "teamName=teamA",
+            "teamName=teamB&ageGoe=20&ageLoe=60",
+            "username=member7",
+            "usernameEqIgnoreCase=MEMBER7",
+            "ageGoe=90"
+    );
+    private static final int[] PAGES = {0, 1, 10, 100};
+
+    private static final int WARM_UP_REQUESTS = 500;
+    private static final long MAX_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final List<String> conditions = new ArrayList<>();
+    private int[] cumulativeWeights; //conditions 와 같은 순서, 가중치 누적합
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @BeforeEach
+    void conditionMix() {
+        String property = System.getProperty("load.conditions");
+        List<String> entries = property != null ? Arrays.asList(property.split(";", -1)) : CONDITIONS;
+
+        List<Integer> weights = new ArrayList<>();
+        for (String entry : entries) {
+            int colon = entry.indexOf(':');
+            boolean weighted = colon > 0 && entry.substring(0, colon).chars().allMatch(Character::isDigit);
+            int weight = weighted ? Integer.parseInt(entry.substring(0, colon)) : 1;
+            if (weight > 0) {
+                conditions.add(weighted ? entry.substring(colon + 1).trim() : entry.trim());
+                weights.add(weight);
+            }
+        }
+        assertThat(conditions).as("load.conditions has no condition with weight > 0: %s", property).isNotEmpty();
+
+        cumulativeWeights = new int[weights.size()];
+        int sum = 0;
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            sum += weights.get(i);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    @BeforeEach
+    void seed() {
+        int members = Integer.getInteger("load.members", 10_000);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+
+        Long count = tx.execute(status -> em.createQuery("select count(m) from Member m", Long.class).getSingleResult());
+        if (count != null && count >= members) {
+            return;
+        }
+
+        Team[] teams = tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            return new Team[]{teamA, teamB};
+        });
+
+        for (int from = 0; from < members; from += 1000) {
+            int start = from;
+            tx.executeWithoutResult(status -> {
+                Team teamA = em.getReference(Team.class, teams[0].getId());
+                Team teamB = em.getReference(Team.class, teams[1].getId());
+                for (int i = start; i < Math.min(start + 1000, members); i++) {
+                    em.persist(new Member("member" + i, i % 100, i % 2 == 0 ? teamA : teamB));
+                }
+            });
+        }
+    }
+
+    @Test
+    void searchMember() throws Exception {
+        String mode = System.getProperty("load.mode", "concurrency");
+        int requests = Integer.getInteger("load.requests", 5_000);
+
+        run(mode, WARM_UP_REQUESTS, new ConcurrentHistogram(MAX_LATENCY_NANOS, 3));
+
+        ConcurrentHistogram histogram = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+        long start = System.nanoTime();
+        int errors = run(mode, requests, histogram);
+        long elapsed = System.nanoTime() - start;
+
+        report(mode, requests, elapsed, errors, histogram);
+        assertThat(errors).isZero();
+    }
+
+    private int run(String mode, int requests, Histogram histogram) throws InterruptedException {
+        return "rate".equals(mode) ? fixedRate(requests, histogram) : fixedConcurrency(requests, histogram);
+    }
+
+    //closed model : N개의 worker 가 응답을 받는 즉시 다음 요청을 보낸다
+    private int fixedConcurrency(int requests, Histogram histogram) throws InterruptedException {
+        int concurrency = Integer.getInteger("load.concurrency", 8);
+        AtomicInteger remaining = new AtomicInteger(requests);
+        AtomicInteger errors = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    long start = System.nanoTime();
+                    try {
+                        if (!send()) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                        log.warn("load request failed", e);
+                    }
+                    histogram.recordValue(Math.min(System.nanoTime() - start, MAX_LATENCY_NANOS));
+                }
+            });
+        }
+        workers.shutdown();
+        boolean finished = workers.awaitTermination(10, TimeUnit.MINUTES);
+        workers.shutdownNow();
+        assertThat(finished).as("workers did not finish in time").isTrue();
+        return errors.get();
+    }
+
+    //open model : 응답과 무관하게 일정 간격으로 요청을 보낸다
+    //지연은 실제 전송 시점이 아니라 예정 시점부터 재서 coordinated omission 을 피한다
+    private int fixedRate(int requests, Histogram histogram) throws InterruptedException {
+        int rate = Integer.getInteger("load.rate", 200);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch completed = new CountDownLatch(requests);
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService senders = Executors.newCachedThreadPool();
+        long origin = System.nanoTime();
+        AtomicLong issued = new AtomicLong();
+
+        scheduler.scheduleAtFixedRate(() -> {
+            long n = issued.getAndIncrement();
+            if (n >= requests) {
+                return;
+            }
+            long intended = origin + n * intervalNanos;
+            senders.execute(() -> {
+                try {
+                    if (!send()) {
+                        errors.incrementAndGet();
+                    }
+                    histogram.recordValue(Math.min(System.nanoTime() - intended, MAX_LATENCY_NANOS));
+                } catch (RuntimeException e) {
+                    errors.incrementAndGet();
+                    log.warn("load request failed", e);
+                } finally {
+                    completed.countDown(); //sender 가 예외로 끝나도 기다리는 쪽이 멈추지 않도록
+                }
+            });
+        }, 0, intervalNanos, TimeUnit.NANOSECONDS);
+
+        boolean finished = completed.await(requests * intervalNanos + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS);
+        scheduler.shutdownNow();
+        senders.shutdownNow();
+        assertThat(finished).as("%d requests not completed", completed.getCount()).isTrue();
+        return errors.get();
+    }
+
+    private boolean send() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String condition = nextCondition(random);
+        int page = PAGES[random.nextInt(PAGES.length)];
+
+        URI uri = URI.create("http://localhost:" + port + "/test?size=20&page=" + page
+                + (condition.isEmpty() ? "" : "&" + condition));
+        try {
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(uri).GET().build(),
+                    HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private String nextCondition(ThreadLocalRandom random) {
+        int target = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (cumulativeWeights[i] <= target) {
+            i++;
+        }
+        return conditions.get(i);
+    }
+
+    private void report(String mode, int requests, long elapsedNanos, int errors, Histogram histogram) throws IOException {
+        Path dir = Paths.get(System.getProperty("load.reportDir", "build/reports/load"));
+        Files.createDirectories(dir);
+
+        String label = System.getProperty("load.label", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        Path summary = dir.resolve("search-" + label + ".txt");
+        Path percentiles = dir.resolve("search-" + label + ".hgrm");
+
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        try (PrintStream out = new PrintStream(Files.newOutputStream(summary))) {
+            out.printf("mode=%s%n", mode);
+            out.printf("concurrency=%d%n", Integer.getInteger("load.concurrency", 8));
+            out.printf("rate=%d%n", Integer.getInteger("load.rate", 200));
+            out.printf("requests=%d%n", requests);
+            out.printf("conditions=%s%n", System.getProperty("load.conditions", String.join(";", CONDITIONS)));
+            out.printf("errors=%d%n", errors);
+            out.printf("throughput=%.1f%n", requests / seconds);
+            for (String p : List.of("50", "90", "99", "99.9", "100")) {
+                out.printf("p%s.ms=%.3f%n", p, histogram.getValueAtPercentile(Double.parseDouble(p)) / 1_000_000.0);
+            }
+        }
+
+        //HdrHistogram 표준 출력 포맷 (HistogramPlotter 등으로 커밋 간 비교)
+        try (PrintStream out = new PrintStream(Files.newOutputStream(percentiles))) {
+            histogram.outputPercentileDistribution(out, 1_000_000.0);
+        }
+
+        log.info("load test report = {}\n{}", summary.toAbsolutePath(), String.join("\n", Files.readAllLines(summary)));
+    }
+}
@@ -0,0 +1,102 @@
+package study.querydsl.load;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * where lower(username) = ? (sqlFunction2 방식) vs 인덱스가 걸린 username_lower = ? 비교
+ * -Dload.rows=1000000 -Dload.queries=50
+ */
+@Tag("load")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ignorecase;DB_CLOSE_DELAY=-1",
+        "logging.level.org.hibernate.SQL=info",
+        "decorator.datasource.p6spy.enable-logging=false"
+})
+class UsernameIgnoreCaseBenchmarkTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    JPAQueryFactory queryFactory;
+
+    int rows = Integer.getInteger("load.rows", 1_000_000);
+
+    @BeforeEach
+    void seed() {
+        queryFactory = new JPAQueryFactory(em);
+        Integer count = jdbcTemplate.queryForObject("select count(*) from member", Integer.class);
+        if (count != null && count >= rows) {
+            return;
+        }
+
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            String username = "Member" + i;
+            batch.add(new Object[]{i + 1L, username, Member.lower(username), i % 100});
+            if (batch.size() == 10_000) {
+                insert(batch);
+            }
+        }
+        insert(batch);
+    }
+
+    private void insert(List<Object[]> batch) {
+        jdbcTemplate.batchUpdate("insert into member (member_id, username, username_lower, age) values (?, ?, ?, ?)", batch);
+        batch.clear();
+    }
+
+    @Test
+    void usernameEqIgnoreCase() {
+        int queries = Integer.getInteger("load.queries", 50);
+
+        double function = measure(queries, name -> member.username.lower().eq(Member.lower(name)));
+        double shadowColumn = measure(queries, name -> member.usernameLower.eq(Member.lower(name)));
+
+        System.out.printf("rows=%d queries=%d%n", rows, queries);
+        System.out.printf("lower(username) = ?   : %.3f ms/query%n", function);
+        System.out.printf("username_lower = ?    : %.3f ms/query%n", shadowColumn);
+        System.out.printf("speedup               : %.1fx%n", function / shadowColumn);
+
+        assertThat(shadowColumn).isLessThan(function);
+    }
+
+    private double measure(int queries, Function<String, BooleanExpression> predicate) {
+        //워밍업
+        for (int i = 0; i < 5; i++) {
+            find(predicate, i);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            assertThat(find(predicate, i * 7919 % rows)).hasSize(1);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / queries;
+    }
+
+    private List<Long> find(Function<String, BooleanExpression> predicate, int i) {
+        return queryFactory
+                .select(member.id)
+                .from(member)
+                .where(predicate.apply("MEMBER" + i))
+                .fetch();
+    }
+}
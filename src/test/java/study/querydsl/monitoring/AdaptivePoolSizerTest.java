@@ -0,0 +1,102 @@
+package study.querydsl.monitoring;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptivePoolSizerTest {
+
+    HikariDataSource dataSource;
+    ConnectionPoolMonitor monitor;
+    AdaptivePoolSizer sizer;
+
+    @BeforeEach
+    void before() throws SQLException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:pool-sizer;DB_CLOSE_DELAY=-1");
+        dataSource.setMaximumPoolSize(2);
+        dataSource.setMinimumIdle(2);
+        dataSource.getConnection().close(); //풀 시작
+
+        monitor = new ConnectionPoolMonitor(new SimpleMeterRegistry(), 10_000);
+        sizer = new AdaptivePoolSizer(dataSource, monitor, 2, 4, 5);
+    }
+
+    @AfterEach
+    void after() {
+        dataSource.close();
+    }
+
+    @Test // 대기가 목표보다 길고 기다리는 쓰레드가 있으면 늘리고, 대기가 없고 idle 이 많으면 min 까지 하나씩 줄인다
+    void resize() throws Exception {
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try (Connection ignored = dataSource.getConnection()) {
+                //반납될 때까지 대기
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection() == 0) {
+            Thread.sleep(5);
+        }
+
+        monitor.getAcquireTimer().record(50, TimeUnit.MILLISECONDS);
+        sizer.adjust();
+
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(3);
+        assertThat(sizer.getMeanWaitMillis()).isEqualTo(50);
+
+        first.close();
+        waiting.get(5, TimeUnit.SECONDS);
+        second.close();
+
+        sizer.adjust(); //이번 구간에는 획득 대기 없음
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(2);
+        sizer.adjust();
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(2); //min-size 아래로는 줄이지 않는다
+    }
+
+    @Test // 줄이면서 낮춘 minimumIdle 은 다시 늘릴 때 설정값까지 되돌린다
+    void minimumIdleRestored() throws Exception {
+        sizer = new AdaptivePoolSizer(dataSource, monitor, 1, 4, 5);
+        while (dataSource.getHikariPoolMXBean().getIdleConnections() < 2) {
+            Thread.sleep(5); //minimumIdle 까지 채워질 때까지
+        }
+
+        sizer.adjust();
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(1);
+        assertThat(dataSource.getMinimumIdle()).isEqualTo(1);
+
+        Connection first = dataSource.getConnection();
+        dataSource.getHikariPoolMXBean().softEvictConnections(); //줄어든 크기를 넘는 idle 커넥션 정리
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try (Connection ignored = dataSource.getConnection()) {
+                //반납될 때까지 대기
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection() == 0) {
+            Thread.sleep(5);
+        }
+
+        monitor.getAcquireTimer().record(50, TimeUnit.MILLISECONDS);
+        sizer.adjust();
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(2);
+        assertThat(dataSource.getMinimumIdle()).isEqualTo(2);
+
+        first.close();
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+}
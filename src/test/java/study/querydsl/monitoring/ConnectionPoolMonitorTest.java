@@ -0,0 +1,87 @@
+package study.querydsl.monitoring;
+
+import com.p6spy.engine.common.ConnectionInformation;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberAgeAggregateCache;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//트랜잭션 없이 리포지토리를 호출해야 호출마다 커넥션을 획득/반납한다
+@SpringBootTest
+class ConnectionPoolMonitorTest {
+
+    @Autowired
+    ConnectionPoolMonitor monitor;
+    @Autowired
+    ConnectionPoolEndpoint endpoint;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberAgeAggregateCache ageAggregateCache;
+
+    @Test // 점유 시간은 커넥션을 획득한 리포지토리 메서드별로, 내부 컴포넌트는 리포지토리로 기록하지 않는다
+    void holdTimeByRepositoryMethod() {
+        memberJpaRepository.findAll_Querydsl();
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("nobody");
+        memberRepository.search(condition);
+        ageAggregateCache.invalidate();
+        ageAggregateCache.get();
+
+        List<String> methods = monitor.getHoldTimers().stream()
+                .map(timer -> timer.getId().getTag("method"))
+                .collect(Collectors.toList());
+        assertThat(methods).contains("MemberJpaRepository.findAll_Querydsl");
+        assertThat(methods).anyMatch(method -> method.endsWith(".search"));
+        assertThat(methods).noneMatch(method -> method.startsWith("MemberAgeAggregateCache"));
+    }
+
+    @Test // 임계값 이상 반납되지 않은 커넥션은 한번만 누수 의심으로 센다
+    void leakDetection() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConnectionPoolMonitor leakMonitor = new ConnectionPoolMonitor(registry, 0);
+        ConnectionInformation connection = ConnectionInformation.fromTestConnection(null);
+        connection.setTimeToGetConnectionNs(TimeUnit.MILLISECONDS.toNanos(5));
+
+        leakMonitor.onAfterGetConnection(connection, null);
+        Thread.sleep(2);
+        leakMonitor.detectLeaks();
+        leakMonitor.detectLeaks();
+
+        assertThat(registry.counter("db.connection.leak.suspected").count()).isEqualTo(1);
+        assertThat(leakMonitor.getSuspectedLeaks()).extracting("method").containsExactly(RepositoryCallContext.UNKNOWN);
+        assertThat(leakMonitor.getAcquireTimer().totalTime(TimeUnit.MILLISECONDS)).isEqualTo(5);
+
+        leakMonitor.onAfterConnectionClose(connection, null);
+
+        assertThat(leakMonitor.getSuspectedLeaks()).isEmpty();
+        assertThat(leakMonitor.getHoldTimers()).extracting(Timer::count).containsExactly(1L);
+    }
+
+    @Test // /actuator/connectionpool : 풀 상태, 획득 대기 분포, 메서드별 점유 시간 (자동 조정은 꺼져 있음)
+    @SuppressWarnings("unchecked")
+    void endpoint() {
+        memberJpaRepository.findAll_Querydsl();
+
+        Map<String, Object> result = endpoint.connectionPool();
+
+        assertThat(result).containsKeys("pool", "acquire", "holdByMethod", "suspectedLeaks").doesNotContainKey("adaptive");
+        assertThat((Map<String, Object>) result.get("pool")).containsKeys("maximumPoolSize", "active", "idle", "awaiting");
+        assertThat((Map<String, Object>) result.get("acquire")).containsKeys("count", "meanMillis", "p95Millis");
+        assertThat((Map<String, Object>) result.get("holdByMethod")).containsKey("MemberJpaRepository.findAll_Querydsl");
+    }
+}
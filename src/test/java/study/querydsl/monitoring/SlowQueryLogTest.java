@@ -0,0 +1,99 @@
+package study.querydsl.monitoring;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlowQueryLogTest {
+
+    @Test // 리터럴, in 절 개수, 공백/대소문자가 달라도 같은 fingerprint
+    void fingerprint() {
+        String a = "/* select member1 from Member member1 where member1.age = ?1 */ select member0_.member_id as member_i1_1_ "
+                + "from member member0_ where member0_.age=10 and member0_.username in ('a', 'b')";
+        String b = "select member0_.member_id as member_i1_1_\n  FROM member member0_ WHERE member0_.age=20 "
+                + "and member0_.username in (?, ?, ?)";
+
+        assertThat(SqlFingerprint.of(a)).isEqualTo(SqlFingerprint.of(b));
+        assertThat(SqlFingerprint.of(a))
+                .isEqualTo("select member0_.member_id as member_i1_1_ from member member0_ where member0_.age=? and member0_.username in (?+)");
+        assertThat(SqlFingerprint.comment(a)).isEqualTo("select member1 from member member1 where member1.age = ?1");
+        assertThat(SqlFingerprint.comment(b)).isNull();
+        assertThat(SqlFingerprint.literals("select * from member where age=10 and username='it''s'"))
+                .containsExactly("10", "'it''s'");
+    }
+
+    @Test // fingerprint 별 건수/합계/최대/p95, threshold 이상만 샘플
+    void aggregate() {
+        SlowQueryLog slowQueryLog = new SlowQueryLog(100, 2, 1000);
+        for (int i = 1; i <= 100; i++) {
+            slowQueryLog.record("select * from member where age=" + i, TimeUnit.MILLISECONDS.toNanos(i), null);
+        }
+        slowQueryLog.record("select * from member where age=1", TimeUnit.MILLISECONDS.toNanos(300), "select * from member where age=1");
+        slowQueryLog.record("select * from team where name='a'", TimeUnit.MILLISECONDS.toNanos(1), null);
+
+        List<SlowQueryLog.Stats> top = slowQueryLog.top("total", 10);
+        assertThat(top).hasSize(2);
+
+        SlowQueryLog.Stats member = top.get(0);
+        assertThat(member.getFingerprint()).isEqualTo("select * from member where age=?");
+        assertThat(member.getCount()).isEqualTo(101);
+        assertThat(member.getTotalMillis()).isEqualTo(5350.0);
+        assertThat(member.getMaxMillis()).isEqualTo(300.0);
+        assertThat(member.getP95Millis()).isBetween(95.0, 120.0); //구간 상한값으로 근사
+        assertThat(member.getSamples()).hasSize(1);
+        assertThat(member.getSamples().get(0).getParameters()).containsExactly("1");
+        assertThat(member.getSamples().get(0).getElapsedMillis()).isEqualTo(300);
+
+        assertThat(slowQueryLog.top("max", 1).get(0)).isSameAs(member);
+    }
+
+    @Test // max-fingerprints 를 넘으면 (other) 로 합친다
+    void maxFingerprints() {
+        SlowQueryLog slowQueryLog = new SlowQueryLog(100, 2, 2);
+        slowQueryLog.record("select a from t1", 1, null);
+        slowQueryLog.record("select a from t2", 1, null);
+        slowQueryLog.record("select a from t3", 1, null);
+        slowQueryLog.record("select a from t4", 1, null);
+
+        assertThat(slowQueryLog.all()).extracting(SlowQueryLog.Stats::getFingerprint)
+                .containsExactlyInAnyOrder("select a from t1", "select a from t2", SlowQueryLog.OTHER);
+        assertThat(slowQueryLog.top("count", 1).get(0).getCount()).isEqualTo(2);
+    }
+
+    @Test // 기록이 계속 들어오는 중에도 정렬이 깨지지 않는다 (Comparison method violates its general contract)
+    void topWhileRecording() throws Exception {
+        SlowQueryLog slowQueryLog = new SlowQueryLog(100, 2, 1000);
+        for (int i = 0; i < 200; i++) {
+            slowQueryLog.record("select a from t" + i, 1, null);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int t = 0; t < 4; t++) {
+                executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        slowQueryLog.record("select a from t" + random.nextInt(200), random.nextLong(1, 1_000_000_000), null);
+                    }
+                });
+            }
+            for (int i = 0; i < 500; i++) {
+                for (String order : new String[]{"count", "total", "p95", "max"}) {
+                    assertThat(slowQueryLog.top(order, 10)).hasSize(10);
+                }
+            }
+        } finally {
+            running.set(false);
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -3,7 +3,10 @@ package study.querydsl.repository;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
@@ -11,6 +14,7 @@ import study.querydsl.entity.Team;
 
 import javax.persistence.EntityManager;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
@@ -25,6 +29,12 @@ class MemberJpaRepositoryTest {
     @Autowired
     MemberJpaRepository memberJpaRepository;
 
+    @Autowired
+    MemberBatchReader memberBatchReader;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
 
     @Test
     void basicTest() {
@@ -111,4 +121,39 @@ class MemberJpaRepositoryTest {
         assertThat(result).extracting("username").containsExactly("member4");
     }
 
-}
\ No newline at end of file
+
+    @Test // StatelessSession 은 별도 커넥션이라 커밋된 데이터만 보인다
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void batchReader() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            Team teamA = new Team("batchTeamA");
+            Team teamB = new Team("batchTeamB");
+            for (int i = 0; i < 5; i++) {
+                em.persist(new Member("batch" + i, 10 + i, i % 2 == 0 ? teamA : teamB));
+            }
+        });
+
+        try {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("batchTeamA");
+
+            List<String> usernames = new ArrayList<>();
+            long count = memberBatchReader.forEach(condition, 2, m -> usernames.add(m.getUsername() + "/" + m.getTeam().getName()));
+            assertThat(count).isEqualTo(3);
+            assertThat(usernames).containsExactly("batch0/batchTeamA", "batch2/batchTeamA", "batch4/batchTeamA");
+
+            condition.setTeamName(null);
+            condition.setAgeGoe(10);
+            condition.setAgeLoe(14);
+            List<Integer> chunkSizes = new ArrayList<>();
+            assertThat(memberBatchReader.forEachChunk(condition, 2, chunk -> chunkSizes.add(chunk.size()))).isEqualTo(5);
+            assertThat(chunkSizes).containsExactly(2, 2, 1);
+        } finally {
+            tx.executeWithoutResult(status -> {
+                em.createQuery("delete from Member m where m.username like 'batch%'").executeUpdate();
+                em.createQuery("delete from Team t where t.name like 'batchTeam%'").executeUpdate();
+            });
+        }
+    }
+}
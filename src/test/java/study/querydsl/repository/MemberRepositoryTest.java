@@ -1,19 +1,41 @@
 package study.querydsl.repository;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.Team;
+import study.querydsl.repository.shard.MemberShards;
 
 import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,6 +48,18 @@ class MemberRepositoryTest {
     EntityManager em;
     @Autowired
     MemberRepository memberRepository;
+    @Autowired
+    MemberAgeDeltaBuffer ageDeltaBuffer;
+    @Autowired
+    MemberAgeAggregateCache ageAggregateCache;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    DataSource dataSource;
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+    @Autowired
+    ObjectProvider<MemberShards> memberShards; //shard 를 쓰지 않으므로 비어 있다
 
     @Test
     void basicTest() {
@@ -121,6 +155,75 @@ class MemberRepositoryTest {
         assertThat(result.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
     }
 
+    @Test // slice : pageSize + 1 건만 조회하고 count 쿼리는 없다
+    void slice() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 1; i <= 5; i++) {
+            em.persist(new Member("member" + i, i * 10, teamA));
+        }
+        em.flush();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        Slice<MemberTeamDto> first = memberRepository.searchSlice(condition, PageRequest.of(0, 3));
+        Slice<MemberTeamDto> last = memberRepository.searchSlice(condition, PageRequest.of(1, 3));
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        statistics.setStatisticsEnabled(false);
+
+        assertThat(first.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
+        assertThat(first.hasNext()).isTrue();
+        assertThat(last.getContent()).extracting("username").containsExactly("member4", "member5");
+        assertThat(last.hasNext()).isFalse();
+    }
+
+    @Test // 조건 여러 개를 쿼리 한번으로, 결과는 조건별 search 와 같다 (한 회원이 여러 조건에 걸릴 수 있음)
+    void searchBatch() {
+        Team teamA = new Team("batchA");
+        Team teamB = new Team("batchB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 1; i <= 4; i++) {
+            em.persist(new Member("batchA" + i, i * 10, teamA));
+            em.persist(new Member("batchB" + i, i * 10, teamB));
+        }
+        em.flush();
+
+        MemberSearchCondition byTeamA = new MemberSearchCondition();
+        byTeamA.setTeamName("batchA");
+        MemberSearchCondition byTeamB = new MemberSearchCondition();
+        byTeamB.setTeamName("batchB");
+        byTeamB.setAgeGoe(30);
+        MemberSearchCondition byUsername = new MemberSearchCondition();
+        byUsername.setUsername("batchA2");
+        MemberSearchCondition nothing = new MemberSearchCondition();
+        nothing.setTeamName("none");
+        List<MemberSearchCondition> conditions = List.of(byTeamA, byTeamB, byUsername, nothing);
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+
+        List<List<MemberTeamDto>> results = memberRepository.searchBatch(conditions);
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        statistics.setStatisticsEnabled(false);
+
+        assertThat(results).hasSize(4);
+        assertThat(results.get(0)).extracting("username").containsExactly("batchA1", "batchA2", "batchA3", "batchA4");
+        assertThat(results.get(1)).extracting("username").containsExactly("batchB3", "batchB4");
+        assertThat(results.get(2)).extracting("username").containsExactly("batchA2");
+        assertThat(results.get(3)).isEmpty();
+        for (int i = 0; i < conditions.size(); i++) {
+            assertThat(results.get(i)).usingRecursiveFieldByFieldElementComparator()
+                    .containsExactlyInAnyOrderElementsOf(memberRepository.search(conditions.get(i)));
+        }
+    }
+
     @Test
     void querydslPredicateExecutorTest() {
         Team teamA = new Team("teamA");
@@ -145,4 +248,256 @@ class MemberRepositoryTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test // 대소문자 구분 없는 username 검색
+    void searchUsernameEqIgnoreCase() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("Member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernameEqIgnoreCase("MEMBER1");
+
+        List<MemberTeamDto> result = memberRepository.search(condition);
+
+        assertThat(result).extracting("username").containsExactly("Member1");
+    }
+
+    @Test // 나이 증감 write-behind
+    void addAge() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        em.persist(member1);
+        em.persist(member2);
+        em.flush();
+
+        memberRepository.addAge(member1.getId(), 1);
+        memberRepository.addAge(member1.getId(), 2);
+        memberRepository.addAge(member2.getId(), -5);
+
+        //flush 전에도 조회 결과에는 반영되어 보인다
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        assertThat(memberRepository.search(condition)).extracting("age").containsExactly(13, 15);
+
+        ageDeltaBuffer.flush();
+        em.clear();
+
+        assertThat(ageDeltaBuffer.pending(member1.getId())).isZero();
+        assertThat(em.find(Member.class, member1.getId()).getAge()).isEqualTo(13);
+        assertThat(em.find(Member.class, member2.getId()).getAge()).isEqualTo(15);
+    }
+
+    @Test // flush 중(커밋 전)에도 증감분이 조회 결과에서 빠지지 않고, 실패하면 버퍼로 되돌린다
+    void addAgeVisibleWhileFlushing() {
+        Member member1 = new Member("member1", 10);
+        em.persist(member1);
+        em.flush();
+
+        List<Integer> pendingDuringFlush = new ArrayList<>();
+        MemberAgeDeltaBuffer[] buffer = new MemberAgeDeltaBuffer[1];
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                pendingDuringFlush.add(buffer[0].pending(member1.getId()));
+                if (pendingDuringFlush.size() == 1) {
+                    throw new IllegalStateException("first flush fails");
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        buffer[0] = new MemberAgeDeltaBuffer(jdbcTemplate, transactionManager, Runnable::run, eventPublisher, memberShards, 1000);
+
+        buffer[0].add(member1.getId(), 3);
+        buffer[0].flush(); //실패 -> 버퍼로 되돌림
+        assertThat(buffer[0].pending(member1.getId())).isEqualTo(3);
+
+        buffer[0].flush();
+        assertThat(pendingDuringFlush).containsExactly(3, 3);
+        assertThat(buffer[0].pending(member1.getId())).isZero();
+        em.clear();
+        assertThat(em.find(Member.class, member1.getId()).getAge()).isEqualTo(13);
+    }
+
+    @Test // 커밋 ~ inFlight 에서 빼기 사이에 읽어도 증감분이 두 번 더해지지 않는다 (flush 가 끝날 때까지 기다렸다 읽는다)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void addAgeNotDoubleCountedAtCommit() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Member member1 = new Member("deltaCommit", 10);
+        tx.executeWithoutResult(status -> em.persist(member1));
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        MemberAgeDeltaBuffer[] buffer = new MemberAgeDeltaBuffer[1];
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        List<Future<Integer>> readsAfterCommit = new ArrayList<>();
+        List<Boolean> doneBeforeRelease = new ArrayList<>();
+        ApplicationEventPublisher publisher = event -> {
+            eventPublisher.publishEvent(event); //집계 캐시 등도 그대로 받는다
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() { //커밋은 끝났고 아직 inFlight 에 남아 있다
+                    Future<Integer> read = reader.submit(() -> buffer[0].withPending(
+                            () -> Collections.singletonList(new MemberTeamDto(member1.getId(), "deltaCommit",
+                                    jdbcTemplate.queryForObject("select age from member where member_id = ?", Integer.class, member1.getId()), null, null)),
+                            list -> list).get(0).getAge());
+                    readsAfterCommit.add(read);
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    doneBeforeRelease.add(read.isDone());
+                }
+            });
+        };
+        buffer[0] = new MemberAgeDeltaBuffer(jdbcTemplate, transactionManager, Runnable::run, publisher, memberShards, 1000);
+        try {
+            buffer[0].add(member1.getId(), 3);
+            buffer[0].flush();
+
+            assertThat(doneBeforeRelease).containsExactly(false);
+            assertThat(readsAfterCommit.get(0).get(5, TimeUnit.SECONDS)).isEqualTo(13);
+        } finally {
+            reader.shutdownNow();
+            tx.executeWithoutResult(status -> em.remove(em.find(Member.class, member1.getId())));
+        }
+    }
+
+    @Test // 종료 시에는 진행 중인 flush 를 기다렸다가 그 사이 쌓인 증감분까지 반영한다
+    void flushOnShutdownWaitsForRunningFlush() throws Exception {
+        CountDownLatch inFirstFlush = new CountDownLatch(1);
+        CountDownLatch releaseFirstFlush = new CountDownLatch(1);
+        List<List<Object[]>> flushed = new CopyOnWriteArrayList<>();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                flushed.add(batchArgs);
+                if (flushed.size() == 1) {
+                    inFirstFlush.countDown();
+                    try {
+                        releaseFirstFlush.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                int[] counts = new int[batchArgs.size()];
+                Arrays.fill(counts, 1);
+                return counts;
+            }
+        };
+        MemberAgeDeltaBuffer buffer = new MemberAgeDeltaBuffer(jdbcTemplate, transactionManager, Runnable::run, event -> { }, memberShards, 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            buffer.add(-1L, 1);
+            executor.submit(buffer::flush);
+            assertThat(inFirstFlush.await(5, TimeUnit.SECONDS)).isTrue();
+
+            buffer.add(-2L, 2);
+            buffer.flush(); //진행 중인 flush 가 있으면 건너뛴다
+            assertThat(flushed).hasSize(1);
+
+            Future<?> shutdown = executor.submit(buffer::flushOnShutdown);
+            Thread.sleep(100);
+            assertThat(shutdown.isDone()).isFalse();
+
+            releaseFirstFlush.countDown();
+            shutdown.get(5, TimeUnit.SECONDS);
+            assertThat(flushed).hasSize(2);
+            assertThat(flushed.get(1)).extracting(row -> row[1]).containsExactly(-2L);
+            assertThat(buffer.pending(-2L)).isZero();
+        } finally {
+            releaseFirstFlush.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test // 임계값 flush 는 한번만 맡기고, 그 flush 가 끝난 뒤에 다시 맡긴다
+    void thresholdFlushScheduledOnce() {
+        List<Runnable> submitted = new ArrayList<>();
+        MemberAgeDeltaBuffer buffer = new MemberAgeDeltaBuffer(new JdbcTemplate(dataSource), transactionManager, submitted::add, eventPublisher, memberShards, 2);
+
+        buffer.add(-1L, 1);
+        buffer.add(-2L, 1);
+        buffer.add(-3L, 1);
+        assertThat(submitted).hasSize(1);
+
+        submitted.get(0).run(); //없는 회원이라 증감분은 버려진다
+        assertThat(buffer.pending(-1L)).isZero();
+        buffer.add(-4L, 1);
+        buffer.add(-5L, 1);
+        assertThat(submitted).hasSize(2);
+    }
+
+    @Test // 집계 캐시는 커밋된 데이터 기준이라 테스트 트랜잭션 밖에서 저장 후 정리한다
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void findOldestWithAggregateCache() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Member old = new Member("aggOld", 1000);
+        Member young = new Member("aggYoung", -1000);
+        try {
+            tx.executeWithoutResult(status -> em.persist(old));
+            assertThat(memberRepository.findOldest()).extracting("username").containsExactly("aggOld");
+
+            //PERSIST 는 커밋 후 증분 반영
+            Member older = new Member("aggOlder", 2000);
+            tx.executeWithoutResult(status -> {
+                em.persist(older);
+                em.persist(young);
+            });
+            assertThat(ageAggregateCache.get().getMax()).isEqualTo(2000);
+            assertThat(memberRepository.findOldest()).extracting("username").containsExactly("aggOlder");
+            assertThat(memberRepository.findAgeGoeAverage()).extracting("username").contains("aggOld", "aggOlder").doesNotContain("aggYoung");
+
+            //최고령이 삭제되면 max 만 다시 구한다
+            tx.executeWithoutResult(status -> em.remove(em.find(Member.class, older.getId())));
+            assertThat(memberRepository.findOldest()).extracting("username").containsExactly("aggOld");
+        } finally {
+            tx.executeWithoutResult(status -> memberRepository.findAll().stream()
+                    .filter(m -> m.getUsername().startsWith("agg"))
+                    .forEach(em::remove));
+        }
+    }
+
+    @Test // 저장, 나이 증감 flush 는 다시 집계하지 않고 증분 반영, 최고령의 나이가 줄면 max 만 다시 구한다
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void ageAggregateIncremental() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Member oldest = new Member("aggIncOldest", 30000);
+        Member other = new Member("aggIncOther", 10);
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        try {
+            tx.executeWithoutResult(status -> em.persist(oldest));
+            MemberAgeAggregateCache.AgeAggregate before = ageAggregateCache.get();
+            statistics.clear();
+            statistics.setStatisticsEnabled(true);
+
+            tx.executeWithoutResult(status -> em.persist(other));
+            memberRepository.addAge(other.getId(), 5);
+            ageDeltaBuffer.flush();
+            MemberAgeAggregateCache.AgeAggregate incremented = ageAggregateCache.get();
+            assertThat(incremented.getCount()).isEqualTo(before.getCount() + 1);
+            assertThat(incremented.getSum()).isEqualTo(before.getSum() + 15);
+            assertThat(incremented.getMax()).isEqualTo(30000);
+            assertThat(statistics.getQueryExecutionCount()).isZero();
+
+            memberRepository.addAge(oldest.getId(), -29000);
+            ageDeltaBuffer.flush();
+            MemberAgeAggregateCache.AgeAggregate decreased = ageAggregateCache.get();
+            assertThat(statistics.getQueryExecutionCount()).isEqualTo(1); //select max(age) 만
+            statistics.setStatisticsEnabled(false);
+
+            Object[] actual = em.createQuery("select count(m), sum(m.age), max(m.age) from Member m", Object[].class).getSingleResult();
+            assertThat(decreased.getCount()).isEqualTo(((Number) actual[0]).longValue());
+            assertThat(decreased.getSum()).isEqualTo(((Number) actual[1]).longValue());
+            assertThat(decreased.getMax()).isEqualTo(((Number) actual[2]).intValue());
+        } finally {
+            statistics.setStatisticsEnabled(false);
+            tx.executeWithoutResult(status -> memberRepository.findAll().stream()
+                    .filter(m -> m.getUsername().startsWith("aggInc"))
+                    .forEach(em::remove));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberBulkChangedEvent;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "member.snapshot.enabled=true",
+        "member.snapshot.apply-interval-ms=3600000" //테스트에서는 직접 refresh
+})
+class MemberSearchSnapshotTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+    @Autowired
+    MemberSearchSnapshot snapshot;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    MemberAgeDeltaBuffer ageDeltaBuffer;
+
+    TransactionTemplate tx;
+
+    @BeforeEach
+    void before() {
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            Team teamA = new Team("snapTeamA");
+            Team teamB = new Team("snapTeamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            for (int i = 0; i < 10; i++) {
+                em.persist(new Member("snap" + i, 10 + i % 5, i % 2 == 0 ? teamA : teamB));
+            }
+            em.persist(new Member("SnapNoTeam", 12));
+        });
+        snapshot.refresh();
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where lower(m.username) like 'snap%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name like 'snapTeam%'").executeUpdate();
+        });
+        eventPublisher.publishEvent(new MemberBulkChangedEvent("test")); //벌크 delete 는 이벤트가 없다
+    }
+
+    @Test // 스냅샷 결과가 DB 조회 결과와 같다 (id 순)
+    void sameAsDatabase() {
+        assertSameAsDatabase(new MemberSearchCondition());
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("snapTeamA");
+        condition.setAgeGoe(11);
+        condition.setAgeLoe(13);
+        assertSameAsDatabase(condition);
+
+        condition = new MemberSearchCondition();
+        condition.setUsernameEqIgnoreCase("SNAPNOTEAM");
+        assertSameAsDatabase(condition);
+
+        condition = new MemberSearchCondition();
+        condition.setUsername("snap3");
+        condition.setAgeLoe(13);
+        assertSameAsDatabase(condition);
+
+        condition = new MemberSearchCondition();
+        condition.setTeamName("snapTeamB");
+        assertThat(memberRepository.searchPageSimple(condition, PageRequest.of(1, 3)).getContent())
+                .isEqualTo(memberRepository.search(condition).subList(3, 5));
+    }
+
+    @Test // 이벤트는 refresh 때 반영되고, 그 전까지 staleness 가 늘어난다
+    void incrementalUpdate() throws InterruptedException {
+        assertThat(snapshot.getStalenessMillis()).isZero();
+
+        tx.executeWithoutResult(status -> em.persist(new Member("snapNew", 99)));
+        Thread.sleep(5);
+        assertThat(snapshot.getStalenessMillis()).isPositive();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(99);
+        assertThat(memberRepository.search(condition)).isEmpty(); //아직 반영 전
+
+        snapshot.refresh();
+        assertThat(snapshot.getStalenessMillis()).isZero();
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("snapNew");
+    }
+
+    @Test // 벌크 연산 이벤트를 받으면 다음 refresh 때 다시 적재한다
+    void bulkChange() {
+        tx.executeWithoutResult(status -> em.createQuery("update Member m set m.age = m.age + 100 where m.username like 'snap%'").executeUpdate());
+        eventPublisher.publishEvent(new MemberBulkChangedEvent("test"));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(100);
+        snapshot.refresh();
+
+        assertThat(snapshot.getStalenessMillis()).isZero();
+        assertThat(memberRepository.search(condition)).hasSize(10);
+    }
+
+    @Test // 나이 증감 flush 는 다시 적재하지 않고 회원별로 바로 반영, 버퍼에서 빠진 뒤에도 같은 값이 보인다
+    void ageDeltaFlush() throws InterruptedException {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("snap0");
+        MemberTeamDto before = memberRepository.search(condition).get(0);
+
+        memberRepository.addAge(before.getMemberId(), 5);
+        assertThat(memberRepository.search(condition)).extracting("age").containsExactly(before.getAge() + 5);
+        ageDeltaBuffer.flush();
+        Thread.sleep(5);
+
+        assertThat(ageDeltaBuffer.pending(before.getMemberId())).isZero();
+        assertThat(snapshot.getStalenessMillis()).isZero(); //refresh 없이 반영됨 (다시 적재할 표시도 없다)
+        assertThat(memberRepository.search(condition)).extracting("age").containsExactly(before.getAge() + 5);
+        assertSameAsDatabase(new MemberSearchCondition());
+    }
+
+    @Test // 페이지는 pageable 의 sort 로 정렬한 뒤 자르고, total 은 조건에 맞는 전체
+    void sortedPage() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("snapTeamA");
+
+        Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "username")));
+
+        assertThat(page.getContent()).extracting("username").containsExactly("snap8", "snap6");
+        assertThat(page.getTotalElements()).isEqualTo(5);
+    }
+
+    @Test // 슬라이스도 pageable 의 sort 로 정렬한 뒤 자른다, 다음 페이지 여부만
+    void sortedSlice() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("snapTeamA");
+        Sort byUsernameDesc = Sort.by(Sort.Direction.DESC, "username");
+
+        Slice<MemberTeamDto> first = memberRepository.searchSlice(condition, PageRequest.of(0, 2, byUsernameDesc));
+        Slice<MemberTeamDto> last = memberRepository.searchSlice(condition, PageRequest.of(2, 2, byUsernameDesc));
+
+        assertThat(first.getContent()).isEqualTo(memberRepository.searchPageComplex(condition, PageRequest.of(0, 2, byUsernameDesc)).getContent());
+        assertThat(first.hasNext()).isTrue();
+        assertThat(last.getContent()).hasSize(1);
+        assertThat(last.hasNext()).isFalse();
+    }
+
+    @Test // 팀 이름이 바뀌면 다음 refresh 때 다시 적재, 그 전까지는 staleness 로 DB 조회
+    void teamRenamed() throws InterruptedException {
+        tx.executeWithoutResult(status -> em.createQuery("select t from Team t where t.name = 'snapTeamA'", Team.class)
+                .getSingleResult().changeName("snapTeamC"));
+        Thread.sleep(5);
+        assertThat(snapshot.getStalenessMillis()).isPositive();
+
+        snapshot.refresh();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("snapTeamC");
+        assertThat(snapshot.getStalenessMillis()).isZero();
+        assertThat(snapshot.search(condition)).hasValueSatisfying(result -> assertThat(result).hasSize(5));
+        condition.setTeamName("snapTeamA");
+        assertThat(snapshot.search(condition)).hasValueSatisfying(result -> assertThat(result).isEmpty());
+    }
+
+    private void assertSameAsDatabase(MemberSearchCondition condition) {
+        List<MemberTeamDto> expected = memberJpaRepository.search(condition).stream()
+                .sorted(Comparator.comparing(MemberTeamDto::getMemberId))
+                .collect(Collectors.toList());
+        assertThat(memberRepository.search(condition)).isEqualTo(expected).isNotEmpty();
+    }
+}
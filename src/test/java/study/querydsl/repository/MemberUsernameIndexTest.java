@@ -0,0 +1,91 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//색인은 커밋된 MemberChangedEvent 로 갱신되므로 테스트 트랜잭션 없이 저장 후 정리한다
+@SpringBootTest
+class MemberUsernameIndexTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberUsernameIndex usernameIndex;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+
+    @BeforeEach
+    void before() {
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> em.createQuery("delete from Member m").executeUpdate());
+        usernameIndex.rebuild();
+    }
+
+    @Test // 부분일치/앞부분일치, 대소문자 구분 없이 id 순
+    void searchByUsername() {
+        tx.executeWithoutResult(status -> {
+            em.persist(new Member("Alice", 10));
+            em.persist(new Member("malice", 20));
+            em.persist(new Member("bob", 30));
+        });
+
+        assertThat(memberRepository.searchByUsernameContains("ALI")).extracting("username").containsExactly("Alice", "malice");
+        assertThat(memberRepository.searchByUsernamePrefix("al")).extracting("username").containsExactly("Alice");
+        assertThat(memberRepository.searchByUsernameContains("zzz")).isEmpty();
+    }
+
+    @Test // 저장/수정/삭제가 커밋되면 MemberEntityListener -> MemberChangedEvent 로 색인에 반영
+    void indexFollowsEntityChanges() {
+        Long id = tx.execute(status -> {
+            Member member = new Member("carol", 10);
+            em.persist(member);
+            return member.getId();
+        });
+        assertThat(usernameIndex.startsWith("car")).hasValueSatisfying(ids -> assertThat(ids).containsExactly(id));
+
+        tx.executeWithoutResult(status -> em.find(Member.class, id).changeUsername("dave"));
+        assertThat(usernameIndex.startsWith("car")).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+        assertThat(memberRepository.searchByUsernamePrefix("dav")).extracting("id").containsExactly(id);
+
+        tx.executeWithoutResult(status -> em.remove(em.find(Member.class, id)));
+        assertThat(usernameIndex.contains("ave")).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+        assertThat(memberRepository.searchByUsernameContains("ave")).isEmpty();
+    }
+
+    @Test // 롤백된 변경은 색인에 반영되지 않는다
+    void rollbackNotIndexed() {
+        tx.executeWithoutResult(status -> {
+            em.persist(new Member("erin", 10));
+            status.setRollbackOnly();
+        });
+
+        assertThat(usernameIndex.contains("erin")).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+    }
+
+    @Test // 벌크 update 는 이벤트가 없어 색인이 낡지만, DB 조회에서 원래 조건을 다시 확인해 걸러낸다
+    void staleIndexFilteredByQuery() {
+        tx.executeWithoutResult(status -> em.persist(new Member("frank", 10)));
+        tx.executeWithoutResult(status -> em.createQuery("update Member m set m.username = 'grace', m.usernameLower = 'grace'").executeUpdate());
+
+        assertThat(usernameIndex.contains("frank")).hasValueSatisfying(ids -> assertThat(ids).hasSize(1));
+        assertThat(memberRepository.searchByUsernameContains("frank")).isEmpty();
+    }
+}
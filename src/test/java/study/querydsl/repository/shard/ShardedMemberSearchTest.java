@@ -0,0 +1,197 @@
+package study.querydsl.repository.shard;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberAgeDeltaBuffer;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.QueryDeadline;
+import study.querydsl.repository.support.UnsupportedSortException;
+import study.querydsl.web.MemberSearchStreamer;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "member.sharding.enabled=true",
+        "member.sharding.urls=jdbc:h2:mem:shard-test-0;DB_CLOSE_DELAY=-1,jdbc:h2:mem:shard-test-1;DB_CLOSE_DELAY=-1,jdbc:h2:mem:shard-test-2;DB_CLOSE_DELAY=-1"
+})
+class ShardedMemberSearchTest {
+
+    @Autowired
+    MemberShards shards;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    ShardedMemberSearch shardedMemberSearch;
+    @Autowired
+    MemberSearchStreamer memberSearchStreamer;
+    @Autowired
+    MemberAgeDeltaBuffer ageDeltaBuffer;
+
+    @BeforeEach
+    void before() {
+        //팀 6개 x 회원 3명, 나이는 저장 순서대로 0 ~ 17
+        int age = 0;
+        for (int t = 0; t < 6; t++) {
+            Team team = new Team("team" + t);
+            for (int m = 0; m < 3; m++) {
+                new Member("member" + age, age++, team);
+            }
+            shards.save(team);
+        }
+        shards.save(new Member("noTeam", 100));
+    }
+
+    @AfterEach
+    void after() {
+        for (int shard = 0; shard < shards.size(); shard++) {
+            shards.inTransaction(shard, em -> {
+                em.createQuery("delete from Member").executeUpdate();
+                return em.createQuery("delete from Team").executeUpdate();
+            });
+        }
+    }
+
+    @Test // 팀 단위로 여러 shard 에 나뉘고, id 로 shard 를 알 수 있다
+    void distribution() {
+        List<MemberTeamDto> result = memberRepository.search(new MemberSearchCondition());
+
+        assertThat(result).hasSize(19);
+        Set<Integer> used = new HashSet<>();
+        for (MemberTeamDto dto : result) {
+            int shard = shards.shardOfId(dto.getMemberId());
+            used.add(shard);
+            if (dto.getTeamId() != null) {
+                assertThat(shards.shardOfId(dto.getTeamId())).isEqualTo(shard); //팀과 같은 shard
+            }
+        }
+        assertThat(used).hasSizeGreaterThan(1);
+        assertThat(result).extracting("memberId").isSorted();
+    }
+
+    @Test
+    void search() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(5);
+        condition.setAgeLoe(9);
+        assertThat(memberRepository.search(condition)).extracting("age").containsExactlyInAnyOrder(5, 6, 7, 8, 9);
+
+        condition = new MemberSearchCondition();
+        condition.setTeamName("team4");
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("member12", "member13", "member14");
+    }
+
+    @Test // shard 별 결과를 합쳐 id 순으로 페이징, total 은 shard 별 count 합
+    void searchPage() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        List<MemberTeamDto> all = memberRepository.search(condition);
+
+        Page<MemberTeamDto> page0 = memberRepository.searchPageSimple(condition, PageRequest.of(0, 5));
+        Page<MemberTeamDto> page3 = memberRepository.searchPageComplex(condition, PageRequest.of(3, 5));
+
+        assertThat(page0.getTotalElements()).isEqualTo(19);
+        assertThat(page0.getContent()).isEqualTo(all.subList(0, 5));
+        assertThat(page3.getTotalElements()).isEqualTo(19);
+        assertThat(page3.getContent()).isEqualTo(all.subList(15, 19));
+
+        Slice<MemberTeamDto> slice2 = memberRepository.searchSlice(condition, PageRequest.of(2, 5));
+        Slice<MemberTeamDto> slice3 = memberRepository.searchSlice(condition, PageRequest.of(3, 5));
+        assertThat(slice2.getContent()).isEqualTo(all.subList(10, 15));
+        assertThat(slice2.hasNext()).isTrue();
+        assertThat(slice3.getContent()).isEqualTo(all.subList(15, 19));
+        assertThat(slice3.hasNext()).isFalse();
+    }
+
+    @Test // 요청 마감(QueryDeadline)은 shard 쓰레드의 쿼리에도 걸린다, 취소된 요청은 shard 쿼리도 실행하지 않는다
+    void deadlinePropagated() {
+        QueryDeadline deadline = new QueryDeadline(System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+        deadline.cancel();
+        QueryDeadline.set(deadline);
+        try {
+            assertThatThrownBy(() -> memberRepository.search(new MemberSearchCondition()))
+                    .isInstanceOf(QueryTimeoutException.class)
+                    .hasMessageContaining("request cancelled");
+        } finally {
+            QueryDeadline.clear();
+        }
+    }
+
+    @Test // 건수 제한 검색은 shard 마다 limit 건까지만 읽어 id 순으로 앞에서부터 limit 건, unpaged slice 도 같은 경로, /test/all 은 커서 스트리밍을 쓰지 않는다
+    void limitedSearch() {
+        List<MemberTeamDto> all = memberRepository.search(new MemberSearchCondition());
+
+        assertThat(shardedMemberSearch.search(new MemberSearchCondition(), 5)).isEqualTo(all.subList(0, 5));
+        assertThat(shardedMemberSearch.search(new MemberSearchCondition(), 100)).isEqualTo(all);
+        assertThat(memberRepository.searchSlice(new MemberSearchCondition(), Pageable.unpaged()).getContent()).isEqualTo(all);
+        assertThatThrownBy(() -> shardedMemberSearch.searchSlice(new MemberSearchCondition(), Pageable.unpaged()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(memberSearchStreamer.canStream()).isFalse();
+    }
+
+    @Test // Pageable 의 sort 를 shard 쿼리와 병합 양쪽에 적용, 허용하지 않는 키는 거절
+    void searchPageSorted() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeLoe(17);
+        PageRequest byUsernameDesc = PageRequest.of(0, 4, Sort.by(Sort.Direction.DESC, "username"));
+
+        Page<MemberTeamDto> page = memberRepository.searchPageSimple(condition, byUsernameDesc);
+        Slice<MemberTeamDto> slice = memberRepository.searchSlice(condition, byUsernameDesc);
+
+        //문자열 순서 : member9 > member8 > member7 > member6 > member5 > member4 > member3 > member2 > member17 ...
+        assertThat(page.getContent()).extracting("username").containsExactly("member9", "member8", "member7", "member6");
+        assertThat(slice.getContent()).isEqualTo(page.getContent());
+        assertThatThrownBy(() -> memberRepository.searchPageSimple(condition, PageRequest.of(0, 4, Sort.by("age"))))
+                .hasCauseInstanceOf(UnsupportedSortException.class); //리포지토리 예외 변환으로 InvalidDataAccessApiUsageException 에 감싸진다
+    }
+
+    @Test // shard 조회 결과에도 아직 반영되지 않은 나이 증감분을 더한다
+    void pendingAgeDelta() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team0");
+        Long memberId = memberRepository.search(condition).get(0).getMemberId();
+
+        memberRepository.addAge(memberId, 10);
+
+        assertThat(memberRepository.search(condition)).extracting("age").containsExactly(10, 1, 2);
+        assertThat(memberRepository.searchPageSimple(condition, PageRequest.of(0, 1)).getContent()).extracting("age").containsExactly(10);
+        assertThat(memberRepository.searchSlice(condition, PageRequest.of(0, 1)).getContent()).extracting("age").containsExactly(10);
+        memberRepository.addAge(memberId, -10);
+    }
+
+    @Test // 증감분은 회원이 있는 shard 에 반영된다, 없는 회원의 증감분은 버린다
+    void flushAgeDeltaToShard() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+        MemberTeamDto target = memberRepository.search(condition).get(0);
+        int shard = shards.shardOfId(target.getMemberId());
+        Long missingId = shard * MemberShards.ID_RANGE + 999_999;
+
+        memberRepository.addAge(target.getMemberId(), 7);
+        memberRepository.addAge(missingId, 1);
+        ageDeltaBuffer.flush();
+
+        assertThat(ageDeltaBuffer.pending(target.getMemberId())).isZero();
+        assertThat(ageDeltaBuffer.pending(missingId)).isZero();
+        Integer stored = shards.inTransaction(shard, em -> em.find(Member.class, target.getMemberId()).getAge());
+        assertThat(stored).isEqualTo(target.getAge() + 7);
+        assertThat(memberRepository.search(condition).get(0).getAge()).isEqualTo(target.getAge() + 7);
+    }
+}
@@ -0,0 +1,162 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberTestRepository;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class CountQueriesTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    void before() {
+        queryFactory = new JPAQueryFactory(em);
+        Team teamA = new Team("countTeamA");
+        Team teamB = new Team("countTeamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 5; i++) {
+            em.persist(new Member("countA" + i, 10 + i, teamA));
+            em.persist(new Member("countB" + i, 20 + i, teamB));
+            em.persist(new Member("countN" + i, 30 + i)); //팀 없음
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test // where 에서 안 쓰는 to-one left join, order by, fetch join 은 빠진다
+    void dropUnreferencedLeftJoin() {
+        JPAQuery<Member> content = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(member.username.startsWith("count"), member.age.goe(12))
+                .orderBy(member.username.desc());
+
+        JPAQuery<Long> count = CountQueries.derive(queryFactory, content, member.id);
+
+        assertThat(count.toString()).startsWith("select count(member1.id)")
+                .doesNotContain("join")
+                .doesNotContain("order by");
+        assertThat(count.fetchOne()).isEqualTo(content.fetch().size()).isEqualTo(13L);
+    }
+
+    @Test // where 에서 team 을 쓰면 join 을 남긴다
+    void keepReferencedLeftJoin() {
+        JPAQuery<Member> content = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team)
+                .where(team.name.eq("countTeamA"), member.age.goe(12));
+
+        JPAQuery<Long> count = CountQueries.derive(queryFactory, content, member.id);
+
+        assertThat(count.toString()).contains("left join member1.team as team");
+        assertThat(count.fetchOne()).isEqualTo(content.fetch().size()).isEqualTo(3L);
+    }
+
+    @Test // inner join, 컬렉션 left join 은 행 수가 바뀌므로 그대로, distinct 는 count(distinct id)
+    void keepRowChangingJoins() {
+        JPAQuery<Member> inner = queryFactory
+                .selectFrom(member)
+                .join(member.team, team)
+                .where(member.username.startsWith("count"));
+        JPAQuery<Long> innerCount = CountQueries.derive(queryFactory, inner, member.id);
+        assertThat(innerCount.toString()).contains("inner join");
+        assertThat(innerCount.fetchOne()).isEqualTo(inner.fetch().size()).isEqualTo(10L);
+
+        JPAQuery<Team> toMany = queryFactory
+                .selectFrom(team)
+                .leftJoin(team.members, member)
+                .where(team.name.startsWith("countTeam"));
+        JPAQuery<Long> toManyCount = CountQueries.derive(queryFactory, toMany, team.id);
+        assertThat(toManyCount.toString()).contains("left join");
+        assertThat(toManyCount.fetchOne()).isEqualTo(toMany.fetch().size()).isEqualTo(10L);
+
+        JPAQuery<Team> distinct = queryFactory
+                .selectFrom(team).distinct()
+                .join(team.members, member)
+                .where(member.username.startsWith("count"), member.age.goe(13));
+        JPAQuery<Long> distinctCount = CountQueries.derive(queryFactory, distinct, team.id);
+        assertThat(distinctCount.toString()).startsWith("select count(distinct team.id)");
+        assertThat(distinctCount.fetchOne()).isEqualTo(distinct.fetch().size()).isEqualTo(2L);
+    }
+
+    @Test // 연관관계 없는 theta join 은 on 조건에 맞는 행이 여러 개일 수 있어 where 에서 안 써도 남긴다
+    void keepThetaJoin() {
+        em.persist(new Team("countA0"));
+        em.persist(new Team("countA0"));
+        em.flush();
+
+        JPAQuery<Member> content = queryFactory
+                .selectFrom(member)
+                .leftJoin(team).on(member.username.eq(team.name))
+                .where(member.username.startsWith("count"));
+
+        JPAQuery<Long> count = CountQueries.derive(queryFactory, content, member.id);
+
+        assertThat(count.toString()).contains("left join Team team");
+        assertThat(count.fetchOne()).isEqualTo(content.fetch().size()).isEqualTo(16L); //countA0 은 팀 2개와 join
+    }
+
+    @Test
+    void groupByIsNotDerivable() {
+        JPAQuery<String> grouped = queryFactory
+                .select(team.name)
+                .from(member)
+                .join(member.team, team)
+                .groupBy(team.name);
+
+        assertThat(CountQueries.isDerivable(grouped)).isFalse();
+        assertThatThrownBy(() -> CountQueries.derive(queryFactory, grouped, member.id))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test // 직접 작성한 count 쿼리(applyPagination2) 와 자동으로 만든 count 쿼리의 건수가 같다
+    void sameTotalAsHandWrittenCount() {
+        MemberTestRepository repository = new MemberTestRepository(Member.class);
+        repository.setEntityManager(em);
+
+        MemberSearchCondition noTeam = new MemberSearchCondition();
+        noTeam.setAgeGoe(12);
+        MemberSearchCondition withTeam = new MemberSearchCondition();
+        withTeam.setTeamName("countTeamB");
+        withTeam.setAgeLoe(22);
+
+        for (MemberSearchCondition condition : new MemberSearchCondition[]{noTeam, withTeam}) {
+            PageRequest pageRequest = PageRequest.of(0, 2);
+            long derived = repository.applyPagination(condition, pageRequest).getTotalElements();
+            long handWritten = repository.applyPagination2(condition, pageRequest).getTotalElements();
+            assertThat(derived).isEqualTo(handWritten);
+        }
+
+        //searchPageComplex 도 teamName 조건이 있을 때 team join 을 포함해서 센다
+        Page<MemberTeamDto> page = memberRepository.searchPageComplex(withTeam, PageRequest.of(0, 2));
+        assertThat(page.getTotalElements()).isEqualTo(3);
+    }
+}
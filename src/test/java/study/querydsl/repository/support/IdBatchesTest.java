@@ -0,0 +1,123 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class IdBatchesTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Test // maxBatchSize 단위로 나눈다 (채우기는 Hibernate 의 in_clause_parameter_padding)
+    void split() {
+        List<Long> ids = LongStream.rangeClosed(1, 11).boxed().collect(Collectors.toList());
+
+        List<List<Long>> batches = IdBatches.split(ids, 8);
+
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(0)).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+        assertThat(batches.get(1)).containsExactly(9L, 10L, 11L);
+
+        assertThat(IdBatches.split(new ArrayList<Long>(), 8)).isEmpty();
+        assertThatThrownBy(() -> IdBatches.split(ids, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test // 영속성 컨텍스트에 있는 회원은 쿼리하지 않고, 나머지는 in 쿼리 한번, 요청 순서대로
+    void findAllByIds() {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Member member = new Member("ids" + i, 10 + i);
+            em.persist(member);
+            members.add(member);
+        }
+        em.flush();
+        em.clear();
+
+        Member loaded = em.find(Member.class, members.get(2).getId());
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+
+        List<Long> ids = Arrays.asList(members.get(4).getId(), members.get(2).getId(), -1L,
+                members.get(0).getId(), members.get(4).getId(), members.get(1).getId());
+        List<Member> result = memberRepository.findAllByIds(ids);
+
+        assertThat(result).extracting("username").containsExactly("ids4", "ids2", "ids0", "ids1");
+        assertThat(result.get(1)).isSameAs(loaded);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        //모두 영속성 컨텍스트에 있으면 쿼리 없음 (없는 id -1 은 빼고)
+        statistics.clear();
+        ids = ids.subList(0, 2);
+        assertThat(memberJpaRepository.findAllByIds(ids)).extracting("username").containsExactly("ids4", "ids2");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(0);
+
+        //remove 한 회원은 em.find 와 같이 빠진다
+        em.remove(result.get(0));
+        assertThat(memberJpaRepository.findAllByIds(ids)).extracting("username").containsExactly("ids2");
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test // 트랜잭션 밖에서는 영속성 컨텍스트를 보지 않고 조회만 (MemberRepository 는 MemberJpaRepository 에 위임)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void findAllByIdsWithoutTransaction() {
+        List<Long> ids = Arrays.asList(-1L, -2L);
+
+        assertThat(memberRepository.findAllByIds(ids)).isEmpty();
+        assertThat(memberJpaRepository.findAllByIds(ids)).isEmpty();
+    }
+
+    @Test // 건수가 달라도 파라미터 수가 같은 묶음이면 같은 SQL
+    void planReuse() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Member member = new Member("plan" + i, 20);
+            em.persist(member);
+            ids.add(member.getId());
+        }
+        em.flush();
+        em.clear();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+
+        memberJpaRepository.findAllByIds(ids.subList(0, 5));
+        em.clear();
+        memberJpaRepository.findAllByIds(ids.subList(0, 7));
+        em.clear();
+        memberJpaRepository.findAllByIds(ids.subList(0, 6));
+
+        //Hibernate 가 in ?1 을 2의 거듭제곱 개로 채워 펼친 쿼리 : 5, 6, 7 건 모두 in (8개) 하나의 모양
+        assertThat(Arrays.stream(statistics.getQueries()).filter(query -> query.contains("in (")))
+                .containsExactly("select member1\nfrom Member member1\nwhere member1.id in (?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8)");
+        statistics.setStatisticsEnabled(false);
+    }
+}
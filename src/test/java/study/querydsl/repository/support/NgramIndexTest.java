@@ -0,0 +1,50 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NgramIndexTest {
+
+    NgramIndex index;
+
+    @BeforeEach
+    void before() {
+        index = new NgramIndex();
+        index.put(1L, "member1");
+        index.put(2L, "Member2");
+        index.put(3L, "teamMember3");
+        index.put(4L, "kim");
+    }
+
+    @Test
+    void contains() {
+        assertThat(index.contains("MEMBER")).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(index.contains("member3")).containsExactly(3L);
+        assertThat(index.contains("nothing")).isEmpty();
+    }
+
+    @Test // gram 보다 짧은 검색어
+    void containsShortKeyword() {
+        assertThat(index.contains("im")).containsExactly(4L);
+        assertThat(index.contains("2")).containsExactly(2L);
+    }
+
+    @Test
+    void startsWith() {
+        assertThat(index.startsWith("mem")).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(index.startsWith("team")).containsExactly(3L);
+    }
+
+    @Test
+    void updateAndRemove() {
+        index.put(1L, "renamed");
+        index.remove(4L);
+
+        assertThat(index.contains("member")).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(index.startsWith("ren")).containsExactly(1L);
+        assertThat(index.contains("kim")).isEmpty();
+        assertThat(index.size()).isEqualTo(3);
+    }
+}
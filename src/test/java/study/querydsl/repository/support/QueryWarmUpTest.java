@@ -0,0 +1,49 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "querydsl.warm-up.enabled=true",
+        "management.endpoint.health.probes.enabled=true",
+        "management.endpoint.health.group.readiness.include=readinessState,queryWarmUp"
+})
+class QueryWarmUpTest {
+
+    @Autowired
+    HealthEndpoint healthEndpoint;
+    @Autowired
+    QueryWarmUp queryWarmUp;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test // ApplicationStartedEvent 에서 동기로 끝나므로 기동 후에는 readiness UP
+    void readyAfterStartup() {
+        assertThat(queryWarmUp.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(healthEndpoint.healthForPath("readiness").getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test // 워밍업 전에는 OUT_OF_SERVICE, 조건 조합 32가지 x (search 3개 + page 쿼리 4개, 조건 없는 search 제외)
+    void outOfServiceUntilWarmedUp() {
+        QueryWarmUp warmUp = new QueryWarmUp(memberRepository, memberJpaRepository, transactionManager);
+        assertThat(warmUp.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        warmUp.warmUp();
+
+        assertThat(warmUp.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(warmUp.health().getDetails()).containsEntry("shapes", 31 * 3 + 32 * 4);
+        assertThat(QueryWarmUp.conditionShapes()).hasSize(32);
+    }
+}
@@ -0,0 +1,94 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@Transactional
+class ReadOnlyQueryHintsTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    void before() {
+        queryFactory = new ReadOnlyAwareQueryFactory(em, ReadOnlyQueryHints.DEFAULT);
+    }
+
+    private void saveMembers() {
+        em.persist(new Member("hint1", 10));
+        em.persist(new Member("hint2", 20));
+        em.flush();
+        em.clear();
+    }
+
+    @Test // 쓰기 트랜잭션에서는 자동으로 붙지 않는다
+    void writableTransaction() {
+        saveMembers();
+        List<Member> result = queryFactory.selectFrom(member).fetch();
+
+        Session session = em.unwrap(Session.class);
+        assertThat(result).allMatch(m -> !session.isReadOnly(m));
+    }
+
+    @Test // 직접 지정하면 쓰기 트랜잭션에서도 스냅샷 없이 로딩되고 변경 감지 대상이 아니다
+    void explicitHints() {
+        saveMembers();
+        List<Member> result = ReadOnlyQueryHints.DEFAULT.applyTo(queryFactory.selectFrom(member)).fetch();
+
+        Session session = em.unwrap(Session.class);
+        assertThat(result).allMatch(session::isReadOnly);
+
+        ReflectionTestUtils.setField(result.get(0), "username", "changed");
+        em.flush();
+        em.clear();
+
+        assertThat(queryFactory.selectFrom(member).where(member.username.eq("changed")).fetch()).isEmpty();
+    }
+
+    @Test // 읽기 전용 트랜잭션에서 자동 적용, WRITABLE 로 쿼리 단위로 되돌린다
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void readOnlyTransaction() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        tx.executeWithoutResult(status -> saveMembers());
+        try {
+            readOnly.executeWithoutResult(status -> {
+                Session session = em.unwrap(Session.class);
+                List<Member> result = queryFactory.selectFrom(member).where(member.username.startsWith("hint")).fetch();
+                assertThat(result).hasSize(2).allMatch(session::isReadOnly);
+
+                em.clear();
+                assertThat(ReadOnlyQueryHints.WRITABLE.applyTo(queryFactory.selectFrom(member)).fetch())
+                        .allMatch(m -> !session.isReadOnly(m));
+            });
+        } finally {
+            tx.executeWithoutResult(status -> queryFactory.selectFrom(member)
+                    .where(member.username.startsWith("hint"))
+                    .fetch()
+                    .forEach(em::remove));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"query.guard.max-rows=3", "query.guard.max-batch-conditions=3"})
+@AutoConfigureMockMvc
+class ResultSizeGuardTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    MockMvc mockMvc;
+
+    TransactionTemplate tx;
+
+    @BeforeEach
+    void before() {
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            Team teamA = new Team("guardA");
+            Team teamB = new Team("guardB");
+            em.persist(teamA);
+            em.persist(teamB);
+            for (int i = 0; i < 4; i++) {
+                em.persist(new Member("guard" + i, 10 + i, teamA));
+            }
+            em.persist(new Member("guard4", 20, teamB));
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'guard%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name like 'guard%'").executeUpdate();
+        });
+    }
+
+    @Test // max-rows 이하면 그대로, 넘으면 max-rows + 1 건만 읽고 ROW_CAP
+    void rowCap() {
+        double rejected = rejectedCount();
+
+        MemberSearchCondition teamB = new MemberSearchCondition();
+        teamB.setTeamName("guardB");
+        assertThat(memberRepository.search(teamB)).extracting("username").containsExactly("guard4");
+
+        MemberSearchCondition teamA = new MemberSearchCondition();
+        teamA.setTeamName("guardA");
+        assertThatThrownBy(() -> memberRepository.search(teamA))
+                .isInstanceOfSatisfying(ResultSizeExceededException.class, e -> {
+                    assertThat(e.getReason()).isEqualTo(ResultSizeExceededException.Reason.ROW_CAP);
+                    assertThat(e.getMethod()).isEqualTo("search");
+                    assertThat(e.getMaxRows()).isEqualTo(3);
+                });
+        assertThatThrownBy(() -> tx.execute(status -> memberJpaRepository.findAll_Querydsl()))
+                .isInstanceOf(ResultSizeExceededException.class);
+
+        assertThat(rejectedCount()).isEqualTo(rejected + 1);
+    }
+
+    @Test // searchBatch 는 조건마다 max-rows 까지 (합친 결과가 max-rows 를 넘어도 된다)
+    void rowCapPerBatchCondition() {
+        MemberSearchCondition teamB = new MemberSearchCondition();
+        teamB.setTeamName("guardB");
+        MemberSearchCondition youngA = new MemberSearchCondition();
+        youngA.setTeamName("guardA");
+        youngA.setAgeLoe(12);
+        MemberSearchCondition teamA = new MemberSearchCondition();
+        teamA.setTeamName("guardA");
+
+        List<List<MemberTeamDto>> results = memberRepository.searchBatch(Arrays.asList(teamB, youngA));
+        assertThat(results.get(0)).hasSize(1);
+        assertThat(results.get(1)).hasSize(3);
+
+        assertThatThrownBy(() -> memberRepository.searchBatch(Arrays.asList(teamB, teamA)))
+                .isInstanceOfSatisfying(ResultSizeExceededException.class, e -> {
+                    assertThat(e.getReason()).isEqualTo(ResultSizeExceededException.Reason.ROW_CAP);
+                    assertThat(e.getMethod()).isEqualTo("searchBatch");
+                });
+    }
+
+    @Test // /test/batch 는 조건 수가 max-batch-conditions 를 넘으면 400
+    void batchSizeCap() throws Exception {
+        MvcResult result = mockMvc.perform(post("/test/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"teamName\":\"guardB\"},{\"teamName\":\"a\"},{\"teamName\":\"b\"},{\"teamName\":\"c\"}]"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("BATCH_SIZE_EXCEEDED"))
+                .andExpect(jsonPath("$.maxConditions").value(3));
+    }
+
+    @Test // require-selective-condition=true 이면 조건 없는 검색은 쿼리 없이 거절
+    void requireSelectiveCondition() {
+        ResultSizeGuard guard = new ResultSizeGuard(new SimpleMeterRegistry(), 3, true, false, 20);
+
+        guard.checkSelective("search", true);
+        assertThatThrownBy(() -> guard.checkSelective("search", new MemberSearchCondition().hasSelectiveCondition()))
+                .isInstanceOfSatisfying(ResultSizeExceededException.class,
+                        e -> assertThat(e.getReason()).isEqualTo(ResultSizeExceededException.Reason.NO_SELECTIVE_CONDITION));
+    }
+
+    @Test // /test/all 은 건수가 넘으면 스트리밍으로 전체를 응답, 거절이 아니라 fallback 으로 센다
+    void streamOnExceeded() throws Exception {
+        double rejected = rejectedCount();
+        double fallback = meterRegistry.counter("query.guard.fallback", "method", "search").count();
+
+        MvcResult small = mockMvc.perform(get("/test/all").param("teamName", "guardB"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(small))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+
+        MvcResult large = mockMvc.perform(get("/test/all").param("teamName", "guardA"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(large))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(4))
+                .andExpect(jsonPath("$[3].username").value("guard3"))
+                .andExpect(jsonPath("$[3].teamName").value("guardA"));
+
+        assertThat(rejectedCount()).isEqualTo(rejected);
+        assertThat(meterRegistry.counter("query.guard.fallback", "method", "search").count()).isEqualTo(fallback + 1);
+    }
+
+    private double rejectedCount() {
+        return meterRegistry.counter("query.guard.rejected", "method", "search", "reason", "ROW_CAP").count();
+    }
+}
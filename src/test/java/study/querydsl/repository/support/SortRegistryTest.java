@@ -0,0 +1,88 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberSorts;
+import study.querydsl.repository.MemberTestRepository;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class SortRegistryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Test // 허용한 키만 미리 만든 OrderSpecifier 로, 마지막에 id 를 첫 정렬과 같은 방향으로
+    void orderBy() {
+        assertThat(MemberSorts.MEMBER.orderBy(Sort.by("username").descending()))
+                .containsExactly(member.usernameLower.desc(), member.id.desc());
+        assertThat(MemberSorts.MEMBER.orderBy(Sort.unsorted())).containsExactly(member.id.asc());
+        assertThat(MemberSorts.MEMBER.orderBy(Sort.by("id", "usernameLower"))).containsExactly(member.id.asc(), member.usernameLower.asc());
+
+        assertThatThrownBy(() -> MemberSorts.MEMBER.orderBy(Sort.by("age")))
+                .isInstanceOfSatisfying(UnsupportedSortException.class, e -> {
+                    assertThat(e.getProperty()).isEqualTo("age");
+                    assertThat(e.getSortable()).containsExactlyInAnyOrder("id", "usernameLower", "username");
+                });
+
+        SortRegistry ignoring = SortRegistry.builder("id", member.id)
+                .unsupported(SortRegistry.Unsupported.IGNORE)
+                .build();
+        assertThat(ignoring.orderBy(Sort.by("age"))).containsExactly(member.id.asc());
+    }
+
+    @Test // 인덱스가 없는 컬럼은 등록 시점에 실패
+    void indexValidation() {
+        assertThatThrownBy(() -> SortRegistry.builder("id", member.id).sortable("username", member.username))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> SortRegistry.builder("id", team.id).sortable("name", team.name))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> SortRegistry.builder("id", member.id).rewrite("age", "nothing"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test // Querydsl4RepositorySupport.applyPagination/applySlicing 이 SortRegistry 로 정렬
+    void applyPagination() {
+        Team teamA = new Team("sortTeam");
+        em.persist(teamA);
+        em.persist(new Member("b", 10, teamA));
+        em.persist(new Member("A", 20, teamA));
+        em.persist(new Member("c", 30, teamA));
+        em.persist(new Member("a", 40, teamA));
+
+        MemberTestRepository repository = new MemberTestRepository(Member.class);
+        repository.setEntityManager(em);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("sortTeam");
+        Page<Member> page = repository.applyPagination(condition, PageRequest.of(0, 3, Sort.by("username")));
+
+        //username -> usernameLower, 같은 값(A, a)은 id 순
+        assertThat(page.getContent()).extracting("username").containsExactly("A", "a", "b");
+        assertThat(page.getTotalElements()).isEqualTo(4);
+
+        assertThatThrownBy(() -> repository.applyPagination(condition, PageRequest.of(0, 3, Sort.by("age"))))
+                .isInstanceOf(UnsupportedSortException.class);
+
+        //applySlicing 도 같은 정렬, count 없이 hasNext
+        Slice<Member> slice = repository.applySlicing(condition, PageRequest.of(1, 3, Sort.by("username")));
+        assertThat(slice.getContent()).extracting("username").containsExactly("c");
+        assertThat(slice.hasNext()).isFalse();
+    }
+}
@@ -0,0 +1,172 @@
+package study.querydsl.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberBulkChangedEvent;
+import study.querydsl.entity.PurgeJob;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//chunk 마다 커밋되는 동작을 보려면 테스트 트랜잭션 없이 실행해야 한다
+@SpringBootTest(properties = {"purge.chunk-size=2", "purge.throttle-ms=0"})
+@AutoConfigureMockMvc
+@RecordApplicationEvents
+class MemberPurgeServiceTest {
+
+    @Autowired
+    MemberPurgeService memberPurgeService;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+    @Autowired
+    ApplicationEvents events;
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    TransactionTemplate tx;
+
+    @BeforeEach
+    void before() {
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m").executeUpdate();
+            em.createQuery("delete from PurgeJob j").executeUpdate();
+        });
+    }
+
+    @Test // id 구간을 chunk-size 단위로 나눠 chunk 마다 커밋 (벌크 변경 이벤트도 chunk 마다)
+    void chunking() {
+        List<Long> ids = members(0, 10, 20, 30, 40, 50, 60, 70, 80, 90);
+        Long jobId = job(new PurgeJob(40, ids.get(5), ids.get(9)));
+
+        memberPurgeService.run(jobId);
+
+        PurgeJob job = memberPurgeService.findJob(jobId).get();
+        assertThat(job.getStatus()).isEqualTo(PurgeJob.Status.COMPLETED);
+        assertThat(job.getDeleted()).isEqualTo(5);
+        assertThat(job.getLastId()).isEqualTo(ids.get(9));
+        assertThat(remainingAges()).containsExactly(0, 10, 20, 30, 40);
+        //5개 id 를 2개씩 -> 3 chunk
+        assertThat(events.stream(MemberBulkChangedEvent.class)).hasSize(3);
+    }
+
+    @Test // 중간에 죽어도 재기동 시 lastId 다음부터 이어서 삭제, FAILED 작업은 다시 실행하지 않는다
+    void resumeAfterFailure() throws Exception {
+        List<Long> ids = members(10, 50, 50, 50, 50, 50);
+        //첫 chunk(ids 0~1) 까지 커밋하고 죽은 상태 (삭제된 것처럼 보이지 않도록 row 는 남겨둔다)
+        Long jobId = job(new PurgeJob(40, ids.get(0), ids.get(5)));
+        tx.executeWithoutResult(status -> em.find(PurgeJob.class, jobId).progress(ids.get(1), 0));
+        Long failedJobId = job(new PurgeJob(0, ids.get(0), ids.get(5)));
+        tx.executeWithoutResult(status -> em.find(PurgeJob.class, failedJobId).fail());
+
+        memberPurgeService.resumeUnfinished();
+
+        PurgeJob job = await(jobId);
+        assertThat(job.getStatus()).isEqualTo(PurgeJob.Status.COMPLETED);
+        assertThat(job.getDeleted()).isEqualTo(4);
+        assertThat(remainingAges()).containsExactly(10, 50); //ids 0~1 은 이미 처리된 구간
+        assertThat(memberPurgeService.findJob(failedJobId).get().getStatus()).isEqualTo(PurgeJob.Status.FAILED);
+    }
+
+    @Test // chunk 사이에 throttle-ms 만큼 쉰다
+    void throttling() {
+        MemberPurgeService throttled = new MemberPurgeService(em, transactionManager, eventPublisher, 1, 50);
+        List<Long> ids = members(50, 50, 50, 50);
+        Long jobId = job(new PurgeJob(40, ids.get(0), ids.get(3)));
+
+        long start = System.nanoTime();
+        throttled.run(jobId);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        throttled.shutdown();
+
+        //4 chunk, 사이에 3번 대기
+        assertThat(elapsedMillis).isGreaterThanOrEqualTo(150);
+        assertThat(memberPurgeService.findJob(jobId).get().getDeleted()).isEqualTo(4);
+    }
+
+    @Test // 컨트롤러는 엔티티 대신 PurgeJobDto 를 응답, 작업은 전용 쓰레드에서 실행
+    void controller() throws Exception {
+        members(10, 50, 60);
+
+        String body = mockMvc.perform(post("/members/purge").param("ageGt", "40"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.jobId").exists())
+                .andExpect(jsonPath("$.status").value("RUNNING"))
+                .andReturn().getResponse().getContentAsString();
+        JsonNode job = objectMapper.readTree(body);
+
+        await(job.get("jobId").asLong());
+
+        mockMvc.perform(get("/members/purge/{jobId}", job.get("jobId").asLong()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.deleted").value(2))
+                .andExpect(jsonPath("$.id").doesNotExist());
+        mockMvc.perform(get("/members/purge/{jobId}", -1))
+                .andExpect(status().isNotFound());
+    }
+
+    private List<Long> members(int... ages) {
+        return tx.execute(status -> {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < ages.length; i++) {
+                Member member = new Member("purge" + i, ages[i]);
+                em.persist(member);
+                ids.add(member.getId());
+            }
+            return ids;
+        });
+    }
+
+    private Long job(PurgeJob job) {
+        return tx.execute(status -> {
+            em.persist(job);
+            return job.getId();
+        });
+    }
+
+    private List<Integer> remainingAges() {
+        return em.createQuery("select m.age from Member m order by m.id", Integer.class).getResultList();
+    }
+
+    private PurgeJob await(Long jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        PurgeJob job = memberPurgeService.findJob(jobId).get();
+        while (job.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            job = memberPurgeService.findJob(jobId).get();
+        }
+        return job;
+    }
+}
@@ -0,0 +1,158 @@
+package study.querydsl.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    static final String LOOPBACK = "127\\.0\\.0\\.1|0:0:0:0:0:0:0:1";
+
+    @Test // 클라이언트 몫을 넘으면 CLIENT_QUOTA, 전체 limit 을 넘으면 LIMIT
+    void quota() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 1.5, 0.5);
+
+        AdaptiveConcurrencyLimiter.Result a1 = limiter.tryAcquire("a");
+        assertThat(a1.isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("a").isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("a").getRejection()).isEqualTo(AdaptiveConcurrencyLimiter.Rejection.CLIENT_QUOTA);
+
+        assertThat(limiter.tryAcquire("b").isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("b").isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("c").getRejection()).isEqualTo(AdaptiveConcurrencyLimiter.Rejection.LIMIT);
+        assertThat(limiter.getInFlight()).isEqualTo(4);
+
+        a1.getToken().release(false);
+        assertThat(limiter.tryAcquire("c").isAcquired()).isTrue();
+    }
+
+    @Test // 응답 시간이 평소와 같으면 limit 을 늘리고, 느려지거나 실패하면 줄인다
+    void adjustLimitByLatency() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 50, 1.5, 1.0);
+        long fast = TimeUnit.MILLISECONDS.toNanos(10);
+        long slow = TimeUnit.MILLISECONDS.toNanos(100);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onSample(fast, limiter.getLimit(), false);
+        }
+        int grown = limiter.getLimit();
+        assertThat(grown).isGreaterThan(10);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.onSample(slow, limiter.getLimit(), false);
+        }
+        int shrunk = limiter.getLimit();
+        assertThat(shrunk).isLessThan(grown);
+
+        limiter.onSample(0, 0, true);
+        assertThat(limiter.getLimit()).isLessThan(shrunk);
+    }
+
+    @Test // 부하가 없으면(in-flight 가 limit 의 절반 미만) limit 을 늘리지 않는다
+    void noGrowthWhenIdle() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 50, 1.5, 1.0);
+        for (int i = 0; i < 20; i++) {
+            limiter.onSample(TimeUnit.MILLISECONDS.toNanos(10), 1, false);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test // 거절 시 바로 429/503 + Retry-After, 메트릭 기록
+    void interceptorRejects() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(registry, 2, 1, 10, 1.5, 0.5, "X-Client-Id", LOOPBACK);
+
+        MockHttpServletRequest first = request("a");
+        assertThat(interceptor.preHandle(first, new MockHttpServletResponse(), null)).isTrue();
+
+        MockHttpServletResponse quota = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(request("a"), quota, null)).isFalse();
+        assertThat(quota.getStatus()).isEqualTo(429);
+        assertThat(quota.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+
+        assertThat(interceptor.preHandle(request("b"), new MockHttpServletResponse(), null)).isTrue();
+        MockHttpServletResponse limit = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(request("c"), limit, null)).isFalse();
+        assertThat(limit.getStatus()).isEqualTo(503);
+
+        assertThat(registry.get("admission.inflight").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("admission.rejected").tag("reason", "client_quota").counter().count()).isEqualTo(1);
+        assertThat(registry.get("admission.rejected").tag("reason", "limit").counter().count()).isEqualTo(1);
+
+        interceptor.afterCompletion(first, new MockHttpServletResponse(), null, null);
+        assertThat(registry.get("admission.inflight").gauge().value()).isEqualTo(1);
+    }
+
+    @Test // 비동기 응답의 async dispatch 는 처음 받은 Token 을 그대로 쓴다
+    void asyncDispatch() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(registry, 2, 1, 10, 1.5, 1.0, "X-Client-Id", LOOPBACK);
+
+        MockHttpServletRequest request = request("a");
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), null)).isTrue();
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), null)).isTrue();
+        assertThat(registry.get("admission.inflight").gauge().value()).isEqualTo(1);
+
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), null, null);
+        assertThat(registry.get("admission.inflight").gauge().value()).isEqualTo(0);
+    }
+
+    @Test // 클라이언트 구분 헤더, X-Forwarded-For 는 trusted-proxies 를 거친 요청에서만 믿는다
+    void clientKey() {
+        AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(new SimpleMeterRegistry(), 2, 1, 10, 1.5, 1.0, "X-Client-Id", LOOPBACK);
+
+        //프록시 없이 직접 붙은 호출자가 헤더를 바꿔 보내도 자기 주소로 센다
+        MockHttpServletRequest direct = request("spoofed");
+        direct.setRemoteAddr("10.0.0.7");
+        direct.addHeader("X-Forwarded-For", "1.2.3.4");
+        assertThat(interceptor.clientOf(direct)).isEqualTo("10.0.0.7");
+
+        assertThat(interceptor.clientOf(request("a"))).isEqualTo("id:a");
+
+        //X-Forwarded-For 는 오른쪽부터, 호출자가 앞에 덧붙인 값은 보지 않는다
+        AdmissionControlInterceptor byAddress = new AdmissionControlInterceptor(new SimpleMeterRegistry(), 2, 1, 10, 1.5, 1.0, "", LOOPBACK);
+        MockHttpServletRequest forwarded = request("ignored");
+        forwarded.addHeader("X-Forwarded-For", "6.6.6.6, 10.0.0.8, 127.0.0.1");
+        assertThat(byAddress.clientOf(forwarded)).isEqualTo("10.0.0.8");
+        assertThat(byAddress.clientOf(new MockHttpServletRequest("GET", "/test"))).isEqualTo("127.0.0.1");
+    }
+
+    @Test // 304, 4xx 는 응답 시간 표본에서 빼고, 5xx 는 실패로 limit 을 줄인다
+    void sampleOnlySearchedResponses() {
+        AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(new SimpleMeterRegistry(), 10, 1, 20, 1.5, 1.0, "X-Client-Id", LOOPBACK);
+        AdaptiveConcurrencyLimiter limiter = interceptor.getLimiter();
+
+        complete(interceptor, 304);
+        complete(interceptor, 400);
+        complete(interceptor, 404);
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+        assertThat(limiter.getLongRttNanos()).isEqualTo(0);
+        assertThat(limiter.getLimit()).isEqualTo(10);
+
+        complete(interceptor, 200);
+        assertThat(limiter.getLongRttNanos()).isGreaterThan(0);
+
+        complete(interceptor, 503);
+        assertThat(limiter.getLimit()).isLessThan(10);
+    }
+
+    private void complete(AdmissionControlInterceptor interceptor, int status) {
+        MockHttpServletRequest request = request("a");
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), null)).isTrue();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setStatus(status);
+        interceptor.afterCompletion(request, response, null, null);
+    }
+
+    private MockHttpServletRequest request(String client) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/test");
+        request.addHeader("X-Client-Id", client);
+        return request;
+    }
+}
@@ -0,0 +1,72 @@
+package study.querydsl.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberTeamPageHttpMessageConverterTest {
+
+    MemberTeamPageHttpMessageConverter converter = new MemberTeamPageHttpMessageConverter();
+
+    Type pageType = new ParameterizedTypeReference<Page<MemberTeamDto>>() {}.getType();
+
+    Page<MemberTeamDto> page = new PageImpl<>(List.of(
+            new MemberTeamDto(1L, "member1", 10, 1L, "teamA"),
+            new MemberTeamDto(2L, "member2", 20, null, null)),
+            PageRequest.of(1, 2), 5);
+
+    @Test // Page<MemberTeamDto> 로 선언된 경우만 처리
+    void canWrite() {
+        Type otherPage = new ParameterizedTypeReference<Page<MemberDto>>() {}.getType();
+
+        assertThat(converter.canWrite(pageType, PageImpl.class, MediaType.APPLICATION_JSON)).isTrue();
+        assertThat(converter.canWrite(pageType, PageImpl.class, MemberTeamPageHttpMessageConverter.APPLICATION_SMILE)).isTrue();
+        assertThat(converter.canWrite(otherPage, PageImpl.class, MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(converter.canWrite(pageType, PageImpl.class, MediaType.APPLICATION_XML)).isFalse();
+    }
+
+    @Test
+    void json() throws IOException {
+        JsonNode node = new ObjectMapper().readTree(write(MediaType.APPLICATION_JSON));
+
+        assertThat(node.get("page").asInt()).isEqualTo(1);
+        assertThat(node.get("size").asInt()).isEqualTo(2);
+        assertThat(node.get("totalElements").asLong()).isEqualTo(5);
+        assertThat(node.get("totalPages").asInt()).isEqualTo(3);
+        assertThat(node.has("pageable")).isFalse();
+        assertThat(node.get("content").get(0).get("teamName").asText()).isEqualTo("teamA");
+        assertThat(node.get("content").get(1).has("teamId")).isFalse();
+    }
+
+    @Test // 바이너리 인코딩도 같은 구조
+    void smileAndCbor() throws IOException {
+        JsonNode json = new ObjectMapper().readTree(write(MediaType.APPLICATION_JSON));
+        JsonNode smile = new ObjectMapper(new SmileFactory()).readTree(write(MemberTeamPageHttpMessageConverter.APPLICATION_SMILE));
+        JsonNode cbor = new ObjectMapper(new CBORFactory()).readTree(write(MediaType.APPLICATION_CBOR));
+
+        assertThat(smile).isEqualTo(json);
+        assertThat(cbor).isEqualTo(json);
+    }
+
+    private byte[] write(MediaType mediaType) throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(page, pageType, mediaType, message);
+        return message.getBodyAsBytes();
+    }
+}
@@ -0,0 +1,243 @@
+package study.querydsl.web;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.annotations.QueryHints;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.QueryDeadline;
+import study.querydsl.repository.support.ReadOnlyAwareQueryFactory;
+import study.querydsl.repository.support.ReadOnlyQueryHints;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class RequestDeadlinesTest {
+
+    //마감/연결 끊김 시 실행 중인 쿼리가 취소되는지 보려고 끝나지 않는 쿼리를 WebAsyncTask 로 실행
+    @TestConfiguration
+    static class SlowQueryConfig {
+        @Bean
+        SlowQueryController slowQueryController(RequestDeadlines requestDeadlines, EntityManager em) {
+            return new SlowQueryController(requestDeadlines, em);
+        }
+    }
+
+    @RestController
+    static class SlowQueryController {
+        private final RequestDeadlines requestDeadlines;
+        private final EntityManager em;
+        volatile CountDownLatch started;
+        volatile CountDownLatch finished;
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        SlowQueryController(RequestDeadlines requestDeadlines, EntityManager em) {
+            this.requestDeadlines = requestDeadlines;
+            this.em = em;
+        }
+
+        @GetMapping("/test/slow-query")
+        WebAsyncTask<Object> slowQuery(WebRequest request) {
+            return requestDeadlines.withDeadline(request, () -> {
+                started.countDown();
+                try {
+                    //10^10 행 조인, 취소되지 않으면 30초 뒤 JDBC timeout
+                    return em.createNativeQuery("select count(*) from system_range(1, 100000) a, system_range(1, 100000) b where a.x + b.x < 0")
+                            .setHint(QueryHints.TIMEOUT_JPA, 30_000)
+                            .getSingleResult();
+                } catch (RuntimeException e) {
+                    failure.set(e);
+                    throw e;
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+    }
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    RequestDeadlines requestDeadlines;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    SlowQueryController slowQueryController;
+
+    @AfterEach
+    void after() {
+        QueryDeadline.clear();
+    }
+
+    @Test // /test, /test/slice 는 WebAsyncTask 로 실행, /test 응답 형식은 그대로 MemberTeamPageHttpMessageConverter
+    void searchWithDeadline() throws Exception {
+        MvcResult result = mockMvc.perform(get("/test").header("X-Request-Timeout-Ms", "2000"))
+                .andExpect(request().asyncStarted())
+                .andExpect(request().asyncResult(notNullValue()))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").exists())
+                .andExpect(jsonPath("$.pageable").doesNotExist());
+
+        //slice 도 같은 마감, count 없이 다음 페이지 여부만
+        MvcResult slice = mockMvc.perform(get("/test/slice").param("size", "5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(slice))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.last").exists())
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+    }
+
+    @Test // /test/batch : 조건 목록을 한번에, 결과는 조건 순서대로
+    void searchBatch() throws Exception {
+        MvcResult result = mockMvc.perform(post("/test/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"username\":\"member1\"},{\"teamName\":\"none\"}]"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].length()").value(0));
+    }
+
+    @Test // 남은 시간을 초 단위로 올려서 javax.persistence.query.timeout 으로
+    void timeoutHint() {
+        QueryDeadline.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500));
+        JPAQuery<Member> query = new ReadOnlyAwareQueryFactory(em, ReadOnlyQueryHints.DEFAULT).selectFrom(member);
+
+        assertThat(query.createQuery().getHints()).containsEntry(QueryHints.TIMEOUT_JPA, 2000);
+    }
+
+    @Test // 마감이 지났으면 쿼리를 실행하지 않고 타임아웃, 리포지토리 메서드별로 센다
+    void expiredDeadline() {
+        double before = timeouts();
+        QueryDeadline.set(System.nanoTime() - 1);
+
+        assertThatThrownBy(() -> memberRepository.search(new MemberSearchCondition()))
+                .isInstanceOf(QueryTimeoutException.class);
+        assertThat(timeouts()).isEqualTo(before + 1);
+    }
+
+    @Test // 마감이 지나면(onTimeout) 실행 중인 쿼리를 취소, 취소를 센다
+    void cancelOnTimeout() throws Exception {
+        double before = cancelled("timeout");
+
+        MvcResult result = startSlowQuery();
+        long start = System.nanoTime();
+        for (AsyncListener listener : asyncListeners(result)) {
+            listener.onTimeout(new AsyncEvent(result.getRequest().getAsyncContext()));
+        }
+
+        assertCancelled(start);
+        assertThat(cancelled("timeout")).isEqualTo(before + 1);
+    }
+
+    @Test // 클라이언트가 끊으면(onError) 실행 중인 쿼리를 취소, 취소를 센다
+    void cancelOnDisconnect() throws Exception {
+        double before = cancelled("disconnect");
+
+        MvcResult result = startSlowQuery();
+        long start = System.nanoTime();
+        for (AsyncListener listener : asyncListeners(result)) {
+            listener.onError(new AsyncEvent(result.getRequest().getAsyncContext(), new IOException("Broken pipe")));
+        }
+
+        assertCancelled(start);
+        assertThat(cancelled("disconnect")).isEqualTo(before + 1);
+    }
+
+    private MvcResult startSlowQuery() throws Exception {
+        slowQueryController.started = new CountDownLatch(1);
+        slowQueryController.finished = new CountDownLatch(1);
+        slowQueryController.failure.set(null);
+
+        MvcResult result = mockMvc.perform(get("/test/slow-query"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(slowQueryController.started.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(500); //statement 가 DB 에서 실행될 때까지
+        return result;
+    }
+
+    //timeout 힌트(30초)보다 훨씬 먼저, 취소로 끝나야 한다
+    private void assertCancelled(long start) throws InterruptedException {
+        assertThat(slowQueryController.finished.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(10);
+        assertThat(slowQueryController.failure.get()).isInstanceOf(PersistenceException.class);
+    }
+
+    private List<AsyncListener> asyncListeners(MvcResult result) {
+        return ((MockAsyncContext) result.getRequest().getAsyncContext()).getListeners();
+    }
+
+    private double cancelled(String reason) {
+        return meterRegistry.counter("request.deadline.cancelled", "reason", reason).count();
+    }
+
+    @Test // 클라이언트는 예산을 줄일 수만 있다
+    void budget() {
+        assertThat(requestDeadlines.budgetMillis(webRequest(null))).isEqualTo(5000);
+        assertThat(requestDeadlines.budgetMillis(webRequest("300"))).isEqualTo(300);
+        assertThat(requestDeadlines.budgetMillis(webRequest("60000"))).isEqualTo(5000);
+        assertThat(requestDeadlines.budgetMillis(webRequest("abc"))).isEqualTo(5000);
+    }
+
+    private double timeouts() {
+        return meterRegistry.find("repository.query.timeout").counters().stream().mapToDouble(Counter::count).sum();
+    }
+
+    private ServletWebRequest webRequest(String timeout) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (timeout != null) {
+            request.addHeader("X-Request-Timeout-Ms", timeout);
+        }
+        return new ServletWebRequest(request);
+    }
+}
@@ -0,0 +1,150 @@
+package study.querydsl.web;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberAgeDeltaBuffer;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.TableVersions;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class SearchETagTest {
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    TableVersions tableVersions;
+    @Autowired
+    SearchETags searchETags;
+    @Autowired
+    MemberAgeDeltaBuffer ageDeltaBuffer;
+    @Autowired
+    MemberRepository memberRepository;
+
+    TransactionTemplate tx;
+
+    @BeforeEach
+    void before() {
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            Team team = new Team("etagTeam");
+            em.persist(team);
+            em.persist(new Member("etag1", 10, team));
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'etag%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name = 'etagTeam'").executeUpdate();
+        });
+    }
+
+    @Test // 바뀐 게 없으면 304, 벌크 update 후에는 200
+    void conditionalGet() throws Exception {
+        String etag = mockMvc.perform(get("/test").param("teamName", "etagTeam"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).startsWith("W/");
+
+        mockMvc.perform(get("/test").param("teamName", "etagTeam").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        //조건이 다르면 다른 ETag
+        mockMvc.perform(get("/test").param("teamName", "etagTeam").param("size", "5").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+
+        tx.executeWithoutResult(status -> em.createQuery("update Member m set m.age = m.age + 1 where m.username = 'etag1'").executeUpdate());
+
+        mockMvc.perform(get("/test").param("teamName", "etagTeam").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test // /test/slice 도 조건부 GET, 같은 조건이라도 /test 의 ETag 와는 다르다
+    void conditionalGetSlice() throws Exception {
+        String pageETag = mockMvc.perform(get("/test").param("teamName", "etagTeam"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String sliceETag = mockMvc.perform(get("/test/slice").param("teamName", "etagTeam"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(sliceETag).isNotNull().isNotEqualTo(pageETag);
+
+        mockMvc.perform(get("/test/slice").param("teamName", "etagTeam").header(HttpHeaders.IF_NONE_MATCH, sliceETag))
+                .andExpect(status().isNotModified());
+
+        tx.executeWithoutResult(status -> em.createQuery("update Member m set m.age = m.age + 1 where m.username = 'etag1'").executeUpdate());
+
+        mockMvc.perform(get("/test/slice").param("teamName", "etagTeam").header(HttpHeaders.IF_NONE_MATCH, sliceETag))
+                .andExpect(status().isOk());
+    }
+
+    @Test // 아직 flush 되지 않은 나이 증감분도 응답에 보이므로 ETag 가 바뀐다
+    void pendingAgeDelta() throws Exception {
+        String etag = mockMvc.perform(get("/test").param("teamName", "etagTeam"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        Long memberId = em.createQuery("select m.id from Member m where m.username = 'etag1'", Long.class).getSingleResult();
+
+        memberRepository.addAge(memberId, 1);
+
+        mockMvc.perform(get("/test").param("teamName", "etagTeam").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+        memberRepository.addAge(memberId, -1);
+    }
+
+    @Test // 재기동하면 테이블 버전이 0 부터 다시 시작하므로 프로세스마다 다른 epoch, shard 나 스냅샷을 쓰면 ETag 를 만들지 않는다
+    void epochAndSharding() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        ServletWebRequest request = new ServletWebRequest(new MockHttpServletRequest("GET", "/test"), new MockHttpServletResponse());
+
+        String etag = searchETags.etag(request, condition, Pageable.unpaged());
+        assertThat(searchETags.etag(request, condition, Pageable.unpaged())).isEqualTo(etag);
+        assertThat(new SearchETags(tableVersions, ageDeltaBuffer, false, false).etag(request, condition, Pageable.unpaged())).isNotEqualTo(etag);
+
+        SearchETags sharded = new SearchETags(tableVersions, ageDeltaBuffer, true, false);
+        assertThat(sharded.checkNotModified(request, condition, Pageable.unpaged())).isFalse();
+        SearchETags snapshot = new SearchETags(tableVersions, ageDeltaBuffer, false, true);
+        assertThat(snapshot.checkNotModified(request, condition, Pageable.unpaged())).isFalse();
+        assertThat(request.getResponse().getHeader(HttpHeaders.ETAG)).isNull();
+    }
+
+    @Test // 실행 시점과 커밋 시점에 버전을 올린다
+    void tableVersions() {
+        long member = tableVersions.version("member");
+        long team = tableVersions.version("TEAM");
+
+        tx.executeWithoutResult(status -> {
+            em.persist(new Member("etag2", 20));
+            em.flush();
+            assertThat(tableVersions.version("member")).isEqualTo(member + 1);
+        });
+
+        assertThat(tableVersions.version("member")).isEqualTo(member + 2);
+        assertThat(tableVersions.version("team")).isEqualTo(team);
+    }
+}